@@ -0,0 +1,45 @@
+package ch.awae.appcheck.statistics;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Per-thread supply of data points for the benchmarks.
+ *
+ * The rows are generated upfront, so the benchmarks measure the ingestion only.
+ * The values are spread over several orders of magnitude to hit many histogram buckets.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+@State(Scope.Thread)
+public class BenchmarkValues {
+
+    static final int CHANNELS = 8;
+
+    private static final int ROWS = 1024;
+
+    private final double[][] rows = new double[ROWS][CHANNELS];
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (double[] row : rows)
+            for (int c = 0; c < CHANNELS; c++)
+                row[c] = Math.exp(random.nextDouble() * 20);
+    }
+
+    /**
+     * @return the next row. The same row instances are returned over and over again.
+     */
+    double[] next() {
+        double[] row = rows[next];
+        next = (next + 1) & (ROWS - 1);
+        return row;
+    }
+
+}
@@ -0,0 +1,43 @@
+package ch.awae.appcheck.statistics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link StatFrame#addPoint(double)}.
+ * All writer threads share a single frame.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatFrameBenchmark {
+
+    private StatFrame frame;
+
+    @Setup
+    public void setup() {
+        frame = new StatFrame(System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public void addPoint(BenchmarkValues values) {
+        frame.addPoint(values.next()[0]);
+    }
+
+}
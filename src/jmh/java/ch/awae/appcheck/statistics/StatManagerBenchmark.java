@@ -0,0 +1,71 @@
+package ch.awae.appcheck.statistics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.awae.appcheck.checker.CheckerUtilities;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of a manager with 8 channels and the default periods of the GC check,
+ * as configured by {@code check.gc.stats} in the shipped {@code docs/checker.properties}.
+ *
+ * The {@code mixed} group runs writers and a polling reader concurrently.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatManagerBenchmark {
+
+    @Param({"SYNCHRONIZED", "STRIPED", "ROLLUP"})
+    public IngestionMode mode;
+
+    private StatManager manager;
+
+    @Setup
+    public void setup() throws IOException {
+        String periods = CheckerUtilities.loadProperties("docs/checker.properties").getProperty("check.gc.stats");
+        manager = new StatManager(mode, BenchmarkValues.CHANNELS, PeriodConfig.parseAll(periods));
+    }
+
+    @Benchmark
+    public void addDataPoint(BenchmarkValues values) {
+        manager.addDataPoint(values.next());
+    }
+
+    @Benchmark
+    public StatSummary[][] getAllSummaries() {
+        return manager.getAllSummaries();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    public StatSummary[][] mixedReader() {
+        return manager.getAllSummaries();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    public void mixedWriter(BenchmarkValues values) {
+        manager.addDataPoint(values.next());
+    }
+
+}
@@ -0,0 +1,74 @@
+package ch.awae.appcheck.statistics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of a single period with 8 channels over 10 minutes in 10 frames.
+ *
+ * The {@code mixed} group runs writers and a polling reader concurrently.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatPeriodBenchmark {
+
+    /**
+     * {@code SYNCHRONIZED} for {@link StatPeriod}, {@code STRIPED} for {@link StripedStatPeriod}
+     */
+    @Param({"SYNCHRONIZED", "STRIPED"})
+    public IngestionMode mode;
+
+    private AbstractStatPeriod period;
+
+    @Setup
+    public void setup() {
+        long now = System.currentTimeMillis();
+        PeriodConfig config = new PeriodConfig(600000, 10, "last 10 minutes");
+        if (mode == IngestionMode.STRIPED)
+            period = new StripedStatPeriod(config, BenchmarkValues.CHANNELS, now);
+        else
+            period = new StatPeriod(config, BenchmarkValues.CHANNELS, now);
+    }
+
+    @Benchmark
+    public void addValues(BenchmarkValues values) {
+        period.addValues(values.next(), System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public StatSummary[] getSummary() {
+        return period.getSummary();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    public StatSummary[] mixedReader() {
+        return period.getSummary();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    public void mixedWriter(BenchmarkValues values) {
+        period.addValues(values.next(), System.currentTimeMillis());
+    }
+
+}
@@ -0,0 +1,58 @@
+package ch.awae.appcheck.statistics;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all statistics benchmarks for 1 to 64 concurrent writers.
+ *
+ * The single-operation benchmarks are run with the writer count as thread count.
+ * The {@code mixed} groups are run with one polling reader next to the writers.
+ * Throughput, latency (sample time) and allocation rate (gc profiler) are reported.
+ * The results of every run are written as JSON to {@code target/jmh-ops-<writers>.json}
+ * and {@code target/jmh-mixed-<writers>.json}.
+ *
+ * If any arguments are given, they are passed on to the regular JMH command line instead.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+public class StatisticsBenchmarkRunner {
+
+    private static final int[] WRITERS = {1, 2, 4, 8, 16, 32, 64};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        for (int writers : WRITERS) {
+            run(options("ops", writers)
+                    .include("ch\\.awae\\.appcheck\\.statistics\\.Stat\\w+Benchmark\\.(addPoint|addValues|addDataPoint|getSummary|getAllSummaries)$")
+                    .threads(writers));
+            // group methods are ordered by name: reader first, then the writers
+            run(options("mixed", writers)
+                    .include("ch\\.awae\\.appcheck\\.statistics\\.Stat\\w+Benchmark\\.mixed$")
+                    .threadGroups(1, writers));
+        }
+    }
+
+    /**
+     * @param run the name of the run, every run writes its own result file
+     */
+    private static ChainedOptionsBuilder options(String run, int writers) {
+        return new OptionsBuilder()
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-" + run + "-" + writers + ".json");
+    }
+
+    private static void run(ChainedOptionsBuilder options) throws RunnerException {
+        new Runner(options.build()).run();
+    }
+
+}
@@ -56,7 +56,13 @@ public class RootCheckerBean implements IChecker {
             checkers.addAll(Arrays.asList(
                     new GarbageCollectorChecker(checkerProps,
                             checkerData.getMinorGCDataContainer(),
-                            checkerData.getMajorGcDataContainer()),
+                            checkerData.getMajorGcDataContainer(),
+                            checkerData.getGcBuckets(),
+                            checkerData.getAllocationDataContainer(),
+                            checkerData.getJfrDataContainer(),
+                            checkerData.getMemoryThresholds(),
+                            checkerData.getGcCauses()),
+                    new NativeMemoryChecker(checkerProps, checkerData.getNativeMemoryDataContainer()),
                     new ClassLoadingChecker(checkerProps),
                     new RuntimeChecker(checkerProps),
                     new ThreadChecker(checkerProps),
@@ -12,6 +12,7 @@ class GarbageCollectionCheckerSubConfiguration {
 
      final long max_duration;
      final double max_frequency;
+     final double max_overhead;
      final float max_MemoryUsage;
      final float strictness;
      final float innerStrictness;
@@ -20,6 +21,7 @@ class GarbageCollectionCheckerSubConfiguration {
      GarbageCollectionCheckerSubConfiguration(Properties props, String prefix, float defaultStrictness, float inheritStrictness) {
         max_duration = Long.parseLong(props.getProperty(prefix + "maxDuration"));
         max_frequency = Double.parseDouble(props.getProperty(prefix + "maxFrequency"));
+        max_overhead = Double.parseDouble(props.getProperty(prefix + "maxOverhead"));
         max_MemoryUsage = Float.parseFloat(props.getProperty(prefix + "maxMemoryUsage"));
         strictness = CheckerUtilities.getStrictness(props.getProperty(prefix + "strictness"), inheritStrictness, defaultStrictness);
         innerStrictness = CheckerUtilities.getStrictness(props.getProperty(prefix + "innerStrictness"), inheritStrictness, defaultStrictness);
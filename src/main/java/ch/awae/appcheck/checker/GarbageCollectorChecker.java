@@ -6,36 +6,73 @@ import org.slf4j.LoggerFactory;
 import ch.awae.appcheck.api.CheckResponse;
 import ch.awae.appcheck.api.CheckResult;
 import ch.awae.appcheck.api.IChecker;
+import ch.awae.appcheck.data.AllocationDataContainer;
+import ch.awae.appcheck.data.GCBucket;
+import ch.awae.appcheck.data.GCBuckets;
+import ch.awae.appcheck.data.GCCauseContainer;
 import ch.awae.appcheck.data.GCDataContainer;
+import ch.awae.appcheck.data.GCEventKind;
+import ch.awae.appcheck.data.JfrDataContainer;
+import ch.awae.appcheck.data.MemoryPoolRole;
+import ch.awae.appcheck.data.MemoryThresholdMonitor;
+import ch.awae.appcheck.statistics.LinearTrend;
+import ch.awae.appcheck.statistics.RateMeter;
+import ch.awae.appcheck.statistics.StatChannel;
 import ch.awae.appcheck.statistics.StatSummary;
 
 import static ch.awae.appcheck.checker.CheckerUtilities.formatDataSize;
 import static ch.awae.appcheck.checker.CheckerUtilities.formatDuration;
 import static ch.awae.appcheck.checker.CheckerUtilities.propagateResult;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Properties;
 
 /**
  * GC checker
  *
+ * Minor and major GC only cover pauses (young and mixed, respectively full pauses).
+ * Concurrent cycles are reported per collector, their duration is not checked
+ * against the maximum pause duration.
+ *
  * @author Andreas Wälchli
  * @version 1.1
  */
 public class GarbageCollectorChecker implements IChecker {
 
     private final GCDataContainer minorGcDataContainer, majorGcDataContainer;
+    private final GCBuckets gcBuckets;
+    private final AllocationDataContainer allocationDataContainer;
+    private final JfrDataContainer jfrDataContainer;
+    private final MemoryThresholdMonitor memoryThresholds;
+    private final GCCauseContainer gcCauses;
 
     // CONFIGURATION START
     private final boolean _isEnabled;
     private final float _root_strictness;
     private final boolean _time_exact;
     private final boolean _memory_exact;
+    private final double _max_allocation_rate, _max_promotion_rate;
+    private final double _max_overhead;
+    private final double _max_time_to_safepoint;
+    private final long _leak_horizon, _leak_min_samples;
+    private final long _threshold_window;
     private final GarbageCollectionCheckerSubConfiguration _minor, _major;
     // CONFIGURATION END
 
-    public GarbageCollectorChecker(final Properties properties, final GCDataContainer minor, final GCDataContainer major) {
+    public GarbageCollectorChecker(final Properties properties, final GCDataContainer minor, final GCDataContainer major,
+                                   final GCBuckets buckets, final AllocationDataContainer allocation,
+                                   final JfrDataContainer jfr, final MemoryThresholdMonitor thresholds,
+                                   final GCCauseContainer causes) {
         this.minorGcDataContainer = minor;
         this.majorGcDataContainer = major;
+        this.gcBuckets = buckets;
+        this.allocationDataContainer = allocation;
+        this.jfrDataContainer = jfr;
+        this.memoryThresholds = thresholds;
+        this.gcCauses = causes;
 
         Logger logger = LoggerFactory.getLogger(getClass());
         logger.debug("reading properties");
@@ -53,6 +90,13 @@ public class GarbageCollectorChecker implements IChecker {
                 _root_strictness = getStrictness(properties.getProperty("check.gc.root_strictness"), -1, default_strictness);
                 _time_exact = Boolean.parseBoolean(properties.getProperty("check.gc.exactTime"));
                 _memory_exact = Boolean.parseBoolean(properties.getProperty("check.gc.mem.exactSize"));
+                _max_allocation_rate = Double.parseDouble(properties.getProperty("check.gc.allocation.maxRate"));
+                _max_promotion_rate = Double.parseDouble(properties.getProperty("check.gc.promotion.maxRate"));
+                _max_overhead = Double.parseDouble(properties.getProperty("check.gc.maxOverhead"));
+                _max_time_to_safepoint = Double.parseDouble(properties.getProperty("check.gc.jfr.maxTimeToSafepoint", "50"));
+                _leak_horizon = Long.parseLong(properties.getProperty("check.gc.leak.horizon"));
+                _leak_min_samples = Long.parseLong(properties.getProperty("check.gc.leak.minSamples"));
+                _threshold_window = Long.parseLong(properties.getProperty("check.gc.threshold.window"));
             }
             // load subconfigs
             _minor = new GarbageCollectionCheckerSubConfiguration(properties, "check.gc.minor.", default_strictness, inherit_strictness);
@@ -61,6 +105,13 @@ public class GarbageCollectorChecker implements IChecker {
             _root_strictness = 0;
             _time_exact = false;
             _memory_exact = false;
+            _max_allocation_rate = 0;
+            _max_promotion_rate = 0;
+            _max_overhead = 0;
+            _max_time_to_safepoint = 0;
+            _leak_horizon = 0;
+            _leak_min_samples = 0;
+            _threshold_window = 0;
             _minor = null;
             _major = null;
         }
@@ -89,6 +140,25 @@ public class GarbageCollectorChecker implements IChecker {
             // check both GC types
             result.addSubCheck(doGcGheck("minor", minorGcDataContainer, _minor));
             result.addSubCheck(doGcGheck("major", majorGcDataContainer, _major));
+            // pool thresholds
+            if (!memoryThresholds.getThresholds().isEmpty())
+                result.addSubCheck(doThresholdCheck());
+            // old gen trend
+            result.addSubCheck(doLeakCheck());
+            // causes
+            if (!gcCauses.getCauses().isEmpty())
+                result.addSubCheck(doCauseCheck());
+            // JVM-wide overhead
+            if (!gcBuckets.getBuckets().isEmpty())
+                result.addSubCheck(doOverheadCheck());
+            // allocation
+            result.addSubCheck(doAllocationCheck());
+            // JFR
+            if (jfrDataContainer != null)
+                result.addSubCheck(doJfrCheck());
+            // per collector
+            if (!gcBuckets.getBuckets().isEmpty())
+                result.addSubCheck(doCollectorCheck());
             // propagate results
             propagateResult(result, _root_strictness);
         } catch (Exception ex) {
@@ -101,10 +171,11 @@ public class GarbageCollectorChecker implements IChecker {
         CheckResponse result = new CheckResponse(type + " GC", "Statistics for " + type + " Garbage Collection");
         StatSummary[][] summaries = container.getSummaries();
         String[] periodTitles = container.getPeriodTitle();
+        StatSummary[] durations = channel(summaries, container, GCDataContainer.DURATION);
 
         // handle all-balls case
         boolean allBalls = true;
-        for (StatSummary sum : summaries[0])
+        for (StatSummary sum : durations)
             if (sum.getCount() != 0) {
                 allBalls = false;
                 break;
@@ -120,7 +191,7 @@ public class GarbageCollectorChecker implements IChecker {
             CheckResponse duration = new CheckResponse("GC frequency", "Frequency of GC runs");
             for (int i = 0; i < periodTitles.length; i++) {
                 CheckResponse sub = new CheckResponse("GC frequency - " + periodTitles[i], "Statistics over the " + periodTitles[i]);
-                StatSummary sum = summaries[0][i];
+                StatSummary sum = durations[i];
 
                 // frequency in runs per minute
                 double frequency = ((double) sum.getCount()) / sum.getDuration() * 60000;
@@ -135,18 +206,32 @@ public class GarbageCollectorChecker implements IChecker {
             result.addSubCheck(duration);
         }
 
-        // CHANNEL_0: GC duration
+        // GC RATE (moving averages)
+        {
+            CheckResponse rate = new CheckResponse("GC rate", "Moving averages of GC runs, reclaimed memory and GC time");
+            rate.addSubCheck(checkRate("1 minute", container, 0, config));
+            rate.addSubCheck(checkRate("5 minutes", container, 1, config));
+            rate.addSubCheck(checkRate("15 minutes", container, 2, config));
+            propagateResult(rate, config.innerStrictness);
+            result.addSubCheck(rate);
+        }
+
+        // GC duration
         {
             CheckResponse duration = new CheckResponse("GC duration", "Time spent per GC run");
             for (int i = 0; i < periodTitles.length; i++) {
                 CheckResponse sub = new CheckResponse("GC duration - " + periodTitles[i], "Statistics over the " + periodTitles[i]);
-                StatSummary sum = summaries[0][i];
+                StatSummary sum = durations[i];
 
                 String min = formatDuration((long) sum.getMin(), _time_exact);
                 String avg = formatDuration((long) sum.getAvg(), _time_exact);
                 String max = formatDuration((long) sum.getMax(), _time_exact);
+                String p50 = formatDuration((long) sum.getP50(), _time_exact);
+                String p90 = formatDuration((long) sum.getP90(), _time_exact);
+                String p99 = formatDuration((long) sum.getP99(), _time_exact);
+                String p999 = formatDuration((long) sum.getP999(), _time_exact);
 
-                sub.setMessage(String.format("%s / %s / %s", min, avg, max));
+                sub.setMessage(String.format("%s / %s / %s (p50 %s, p90 %s, p99 %s, p99.9 %s)", min, avg, max, p50, p90, p99, p999));
                 if (sum.getAvg() > config.max_duration)
                     sub.setResult(CheckResult.CHECK_NOK);
                 else
@@ -157,22 +242,50 @@ public class GarbageCollectorChecker implements IChecker {
             result.addSubCheck(duration);
         }
 
-        // CHANNEL_1: Total RAM Usage
+        // GC overhead
         {
+            CheckResponse overhead = new CheckResponse("GC overhead", "Fraction of wall time spent in GC");
+            for (int i = 0; i < periodTitles.length; i++) {
+                CheckResponse sub = new CheckResponse("GC overhead - " + periodTitles[i], "Statistics over the " + periodTitles[i]);
+                double ratio = overhead(durations[i]);
+                sub.setMessage(formatOverhead(ratio));
+                if (ratio > config.max_overhead)
+                    sub.setResult(CheckResult.CHECK_NOK);
+                else
+                    sub.setResult(CheckResult.CHECK_OK);
+                overhead.addSubCheck(sub);
+            }
+            propagateResult(overhead, config.innerStrictness);
+            result.addSubCheck(overhead);
+        }
+
+        // Total RAM Usage
+        {
+            StatSummary[] usages = channel(summaries, container, GCDataContainer.MEMORY_AFTER);
             CheckResponse usage = new CheckResponse("RAM usage after GC", "Memory usage after each GC run");
             for (int i = 0; i < periodTitles.length; i++) {
                 CheckResponse sub = new CheckResponse("RAM usage - " + periodTitles[i], "Statistics over the " + periodTitles[i]);
-                StatSummary sum = summaries[1][i];
+                StatSummary sum = usages[i];
 
+                // pools without a defined maximum are not included
                 long maxMemory = 0;
                 for (long pool : container.getPoolMax())
-                    maxMemory += pool;
-
-                double fillRatio = sum.getAvg() / maxMemory;
+                    if (pool > 0)
+                        maxMemory += pool;
 
                 String min = formatDataSize((long) sum.getMin(), _memory_exact);
                 String avg = formatDataSize((long) sum.getAvg(), _memory_exact);
                 String max = formatDataSize((long) sum.getMax(), _memory_exact);
+
+                // no pool has a defined maximum
+                if (maxMemory <= 0) {
+                    sub.setMessage(String.format("%s / %s / %s (no maximum defined)", min, avg, max));
+                    sub.setResult(CheckResult.CHECK_OK);
+                    usage.addSubCheck(sub);
+                    continue;
+                }
+
+                double fillRatio = sum.getAvg() / maxMemory;
                 String rat = String.format("%.2f", fillRatio * 100) + "%";
 
                 sub.setMessage(String.format("%s / %s / %s (avg %s)", min, avg, max, rat));
@@ -187,12 +300,13 @@ public class GarbageCollectorChecker implements IChecker {
             result.addSubCheck(usage);
         }
 
-        // CHANNEL_2: RAM Cleared
+        // RAM Cleared
         {
+            StatSummary[] reclaimed = channel(summaries, container, GCDataContainer.RECLAIMED);
             CheckResponse reclamation = new CheckResponse("RAM reclamation per GC", "Memory reclaimed per GC run");
             for (int i = 0; i < periodTitles.length; i++) {
                 CheckResponse sub = new CheckResponse("RAM reclamation - " + periodTitles[i], "Statistics over the " + periodTitles[i]);
-                StatSummary sum = summaries[2][i];
+                StatSummary sum = reclaimed[i];
 
                 String min = formatDataSize((long) sum.getMin(), _memory_exact);
                 String avg = formatDataSize((long) sum.getAvg(), _memory_exact);
@@ -206,31 +320,406 @@ public class GarbageCollectorChecker implements IChecker {
             result.addSubCheck(reclamation);
         }
 
-        // CHANNEL_3 -> CHANNEL_7 => POOL USAGES
+        // POOL USAGES
         long[] poolMax = container.getPoolMax();
-
-        result.addSubCheck(checkPool(summaries[3], periodTitles, "Eden Space", poolMax[0], config.max_eden, config.innerStrictness));
-        result.addSubCheck(checkPool(summaries[4], periodTitles, "Survivor Space", poolMax[1], config.max_survivor, config.innerStrictness));
-        result.addSubCheck(checkPool(summaries[5], periodTitles, "Old Gen", poolMax[2], config.max_old, config.innerStrictness));
-        result.addSubCheck(checkPool(summaries[6], periodTitles, "Perm Gen", poolMax[3], config.max_perm, config.innerStrictness));
-        result.addSubCheck(checkPool(summaries[7], periodTitles, "Code Cache", poolMax[4], config.max_code, config.innerStrictness));
+        float[] limits = {config.max_eden, config.max_survivor, config.max_old, config.max_perm, config.max_code};
+
+        for (int i = 0; i < GCDataContainer.POOL_ROLES.length; i++) {
+            MemoryPoolRole role = GCDataContainer.POOL_ROLES[i];
+            // e.g. ZGC and Shenandoah have no young generation pools
+            if (!container.getMemoryPools().hasRole(role))
+                continue;
+            result.addSubCheck(checkPool(channel(summaries, container, GCDataContainer.POOLS[i]), periodTitles,
+                    role.getTitle(), poolMax[i], limits[i], config.innerStrictness));
+        }
 
         propagateResult(result, config.strictness);
 
         return result;
     }
 
+    /**
+     * Breakdown of the pause time by GC cause. Informational only, the causes are ordered by their
+     * share of the pause time in the shortest period.
+     */
+    private CheckResponse doCauseCheck() {
+        CheckResponse result = new CheckResponse("GC causes", "GC pauses by cause");
+        // snapshot the causes first, the summaries then cover all of them
+        List<StatChannel> causes = new ArrayList<>(gcCauses.getCauses());
+        final StatSummary[][] summaries = gcCauses.getSummaries();
+        String[] periodTitles = gcCauses.getPeriodTitle();
+
+        double[] totals = new double[periodTitles.length];
+        for (StatChannel cause : causes)
+            for (int i = 0; i < totals.length; i++)
+                totals[i] += pauseTime(summaries[cause.getIndex()][i]);
+
+        Collections.sort(causes, new Comparator<StatChannel>() {
+            @Override
+            public int compare(StatChannel a, StatChannel b) {
+                return Double.compare(pauseTime(summaries[b.getIndex()][0]), pauseTime(summaries[a.getIndex()][0]));
+            }
+        });
+
+        for (StatChannel cause : causes) {
+            CheckResponse sub = new CheckResponse("GC cause - " + cause.getName(), "GC pauses caused by '" + cause.getName() + "'");
+            for (int i = 0; i < periodTitles.length; i++) {
+                CheckResponse period = new CheckResponse("GC cause " + cause.getName() + " - " + periodTitles[i],
+                        "Statistics over the " + periodTitles[i]);
+                StatSummary sum = summaries[cause.getIndex()][i];
+                double time = pauseTime(sum);
+                double frequency = sum.getDuration() > 0 ? ((double) sum.getCount()) / sum.getDuration() * 60000 : 0;
+                period.setMessage(String.format("%d pauses (%.2f per minute), %s in total (%.1f%% of the pause time), max %s",
+                        sum.getCount(), frequency, formatDuration((long) time, _time_exact),
+                        totals[i] > 0 ? time / totals[i] * 100 : 0, formatDuration((long) sum.getMax(), _time_exact)));
+                period.setResult(CheckResult.CHECK_OK);
+                sub.addSubCheck(period);
+            }
+            propagateResult(sub, _root_strictness);
+            result.addSubCheck(sub);
+        }
+        propagateResult(result, _root_strictness);
+        return result;
+    }
+
+    /**
+     * @return the summed duration of all summarized pauses in milliseconds
+     */
+    private static double pauseTime(StatSummary durations) {
+        return durations.getCount() == 0 ? 0 : durations.getAvg() * durations.getCount();
+    }
+
+    /**
+     * overhead of all pauses of all collectors. Concurrent cycles do not count.
+     *
+     * The buckets are created on their first event, so their periods may cover less time than
+     * the periods of the minor and major containers (which exist from startup). The pause times
+     * are therefore summed up and divided by the longest period duration of all containers.
+     */
+    private CheckResponse doOverheadCheck() {
+        CheckResponse result = new CheckResponse("GC overhead (JVM)", "Fraction of wall time spent in GC pauses of any collector");
+        String[] periodTitles = minorGcDataContainer.getPeriodTitle();
+        double[] pauses = new double[periodTitles.length];
+        long[] elapsed = new long[periodTitles.length];
+        elapsed(minorGcDataContainer, elapsed);
+        elapsed(majorGcDataContainer, elapsed);
+        boolean paused = false;
+        for (GCBucket bucket : gcBuckets.getBuckets()) {
+            if (!bucket.getKind().isPause())
+                continue;
+            GCDataContainer container = bucket.getContainer();
+            StatSummary[] durations = channel(container.getSummaries(), container, GCDataContainer.DURATION);
+            for (int i = 0; i < pauses.length; i++) {
+                pauses[i] += pauseTime(durations[i]);
+                elapsed[i] = Math.max(elapsed[i], durations[i].getDuration());
+            }
+            paused = true;
+        }
+        double[] ratios = new double[periodTitles.length];
+        for (int i = 0; i < ratios.length; i++)
+            ratios[i] = elapsed[i] > 0 ? pauses[i] / elapsed[i] : 0;
+        if (!paused) {
+            result.setMessage("No GC pauses recorded.");
+            result.setResult(CheckResult.CHECK_OK);
+            return result;
+        }
+        for (int i = 0; i < periodTitles.length; i++) {
+            CheckResponse sub = new CheckResponse("GC overhead (JVM) - " + periodTitles[i], "Statistics over the " + periodTitles[i]);
+            sub.setMessage(formatOverhead(ratios[i]));
+            if (ratios[i] > _max_overhead)
+                sub.setResult(CheckResult.CHECK_NOK);
+            else
+                sub.setResult(CheckResult.CHECK_OK);
+            result.addSubCheck(sub);
+        }
+        propagateResult(result, _root_strictness);
+        return result;
+    }
+
+    /**
+     * Raises the elapsed time per period to the period durations of a container
+     */
+    private static void elapsed(GCDataContainer container, long[] elapsed) {
+        StatSummary[] durations = channel(container.getSummaries(), container, GCDataContainer.DURATION);
+        for (int i = 0; i < elapsed.length; i++)
+            elapsed[i] = Math.max(elapsed[i], durations[i].getDuration());
+    }
+
+    /**
+     * @return the fraction of the summarized time spent in GC
+     */
+    private static double overhead(StatSummary durations) {
+        if (durations.getCount() == 0 || durations.getDuration() <= 0)
+            return 0;
+        return durations.getAvg() * durations.getCount() / durations.getDuration();
+    }
+
+    private static String formatOverhead(double ratio) {
+        return String.format("%.2f%% in GC (throughput %.2f%%)", ratio * 100, (1 - ratio) * 100);
+    }
+
+    /**
+     * Breaches of the memory pool thresholds. These are recorded by the JVM notifications, nothing is polled.
+     */
+    private CheckResponse doThresholdCheck() {
+        CheckResponse result = new CheckResponse("Memory thresholds", "Breaches of the memory pool thresholds");
+        long now = System.currentTimeMillis();
+        for (MemoryThresholdMonitor.Threshold threshold : memoryThresholds.getThresholds()) {
+            CheckResponse sub = new CheckResponse("Memory threshold - " + threshold.getPoolName(),
+                    "Threshold of the memory pool '" + threshold.getPoolName() + "'");
+            String limit = formatDataSize(threshold.getThreshold(), _memory_exact)
+                    + (threshold.isCollectionThreshold() ? " after GC" : "");
+            long count = threshold.getBreachCount();
+            long last = threshold.getLastBreachTime();
+            // a usage threshold is only notified when crossed, not while (or if already) the pool stays above it
+            boolean exceeded = threshold.isExceeded();
+            if (count == 0) {
+                sub.setMessage(limit + (exceeded ? ", exceeded" : ", never exceeded"));
+                sub.setResult(exceeded ? CheckResult.CHECK_NOK : CheckResult.CHECK_OK);
+            } else {
+                sub.setMessage(String.format("%s, exceeded %d times, last %s ago with %s used%s", limit, count,
+                        formatDuration(now - last, _time_exact),
+                        formatDataSize(threshold.getLastBreachUsage(), _memory_exact),
+                        exceeded ? ", still exceeded" : ""));
+                if (exceeded || now - last < _threshold_window)
+                    sub.setResult(CheckResult.CHECK_NOK);
+                else
+                    sub.setResult(CheckResult.CHECK_OK);
+            }
+            result.addSubCheck(sub);
+        }
+        propagateResult(result, _root_strictness);
+        return result;
+    }
+
+    /**
+     * Old gen trend after major GC. Collectors without major GC (e.g. ZGC, Shenandoah) are covered by their
+     * concurrent cycles and cycle pauses.
+     */
+    private CheckResponse doLeakCheck() {
+        CheckResponse result = new CheckResponse("Old Gen trend", "Trend of the old gen usage after GC and projected time until it is full");
+        result.addSubCheck(checkTrend("major GC", majorGcDataContainer));
+        for (GCBucket bucket : gcBuckets.getBuckets()) {
+            GCEventKind kind = bucket.getKind();
+            if (kind == GCEventKind.CONCURRENT || kind == GCEventKind.CYCLE_PAUSE)
+                if (bucket.getContainer().getOldGenTrend().getCount() > 0)
+                    result.addSubCheck(checkTrend(bucket.toString(), bucket.getContainer()));
+        }
+        propagateResult(result, _root_strictness);
+        return result;
+    }
+
+    private CheckResponse checkTrend(String title, GCDataContainer container) {
+        CheckResponse sub = new CheckResponse("Old Gen trend - " + title, "Linear trend of the old gen usage after " + title);
+        LinearTrend trend = container.getOldGenTrend();
+        sub.setResult(CheckResult.CHECK_OK);
+        if (trend.getCount() < _leak_min_samples) {
+            sub.setMessage(trend.getCount() + " samples, not enough for a trend");
+            return sub;
+        }
+        double slope = trend.getSlope();
+        if (Double.isNaN(slope) || slope <= 0) {
+            sub.setMessage("stable or shrinking");
+            return sub;
+        }
+        String growth = formatDataSize((long) (slope * 3600000), _memory_exact) + " per hour";
+        long max = -1;
+        for (int i = 0; i < GCDataContainer.POOL_ROLES.length; i++)
+            if (GCDataContainer.POOL_ROLES[i] == MemoryPoolRole.OLD)
+                max = container.getPoolMax()[i];
+        if (max <= 0) {
+            sub.setMessage("growing by " + growth + ", no maximum defined");
+            return sub;
+        }
+        long remaining = trend.timeUntil(System.currentTimeMillis(), max);
+        sub.setMessage(String.format("growing by %s, projected to reach the maximum of %s in %s", growth,
+                formatDataSize(max, _memory_exact), formatDuration(remaining, _time_exact)));
+        if (remaining < _leak_horizon)
+            sub.setResult(CheckResult.CHECK_NOK);
+        return sub;
+    }
+
+    private CheckResponse doJfrCheck() {
+        CheckResponse result = new CheckResponse("JFR", "GC pauses and safepoints recorded by JFR");
+        StatSummary[][] summaries = jfrDataContainer.getSummaries();
+        String[] periodTitles = jfrDataContainer.getPeriodTitle();
+        result.addSubCheck(checkMillis(jfrSummaries(summaries, JfrDataContainer.SAFEPOINT_SYNC), periodTitles,
+                "Time to safepoint", "Time until all threads reached a safepoint", _max_time_to_safepoint));
+        result.addSubCheck(checkMillis(jfrSummaries(summaries, JfrDataContainer.SAFEPOINT_TOTAL), periodTitles,
+                "Safepoint duration", "Total duration of a safepoint, including the time to safepoint", -1));
+        result.addSubCheck(checkMillis(jfrSummaries(summaries, JfrDataContainer.GC_PHASE_PAUSE), periodTitles,
+                "GC pause phases", "Duration of the individual GC pauses", -1));
+        propagateResult(result, _root_strictness);
+        return result;
+    }
+
+    private StatSummary[] jfrSummaries(StatSummary[][] summaries, String channel) {
+        return summaries[jfrDataContainer.getChannel(channel).getIndex()];
+    }
+
+    /**
+     * @param limit the maximum p99 in milliseconds, negative if not checked
+     */
+    private CheckResponse checkMillis(StatSummary[] summaries, String[] periodTitles, String title, String description, double limit) {
+        CheckResponse result = new CheckResponse(title, description);
+        for (int i = 0; i < periodTitles.length; i++) {
+            CheckResponse sub = new CheckResponse(title + " - " + periodTitles[i], "Statistics over the " + periodTitles[i]);
+            StatSummary sum = summaries[i];
+            if (sum.getCount() == 0) {
+                sub.setMessage("no data available");
+                sub.setResult(CheckResult.CHECK_OK);
+                result.addSubCheck(sub);
+                continue;
+            }
+            // sub-millisecond values, formatDuration only has millisecond precision
+            sub.setMessage(String.format("%d times, %.3fms / %.3fms / %.3fms (p99 %.3fms)",
+                    sum.getCount(), sum.getMin(), sum.getAvg(), sum.getMax(), sum.getP99()));
+            if (limit >= 0 && sum.getP99() > limit)
+                sub.setResult(CheckResult.CHECK_NOK);
+            else
+                sub.setResult(CheckResult.CHECK_OK);
+            result.addSubCheck(sub);
+        }
+        propagateResult(result, _root_strictness);
+        return result;
+    }
+
+    private CheckResponse doAllocationCheck() {
+        CheckResponse result = new CheckResponse("Allocation", "Allocation and promotion rates derived from consecutive GC runs");
+        StatSummary[][] summaries = allocationDataContainer.getSummaries();
+        String[] periodTitles = allocationDataContainer.getPeriodTitle();
+        result.addSubCheck(checkBytesPerSecond(summaries[allocationDataContainer.getChannel(AllocationDataContainer.ALLOCATION_RATE).getIndex()],
+                periodTitles, "Allocation rate", "Heap growth between GC runs", _max_allocation_rate));
+        result.addSubCheck(checkBytesPerSecond(summaries[allocationDataContainer.getChannel(AllocationDataContainer.PROMOTION_RATE).getIndex()],
+                periodTitles, "Promotion rate", "Old generation growth by young GC", _max_promotion_rate));
+        propagateResult(result, _root_strictness);
+        return result;
+    }
+
+    private CheckResponse checkBytesPerSecond(StatSummary[] summaries, String[] periodTitles, String title, String description, double limit) {
+        CheckResponse rate = new CheckResponse(title, description);
+        for (int i = 0; i < periodTitles.length; i++) {
+            CheckResponse sub = new CheckResponse(title + " - " + periodTitles[i], "Statistics over the " + periodTitles[i]);
+            StatSummary sum = summaries[i];
+
+            if (sum.getCount() == 0) {
+                sub.setMessage("no data available");
+                sub.setResult(CheckResult.CHECK_OK);
+                rate.addSubCheck(sub);
+                continue;
+            }
+
+            String avg = formatDataSize((long) sum.getAvg(), _memory_exact);
+            String max = formatDataSize((long) sum.getMax(), _memory_exact);
+            String p90 = formatDataSize((long) sum.getP90(), _memory_exact);
+
+            sub.setMessage(String.format("%s/s avg, %s/s max (p90 %s/s)", avg, max, p90));
+            if (sum.getAvg() > limit)
+                sub.setResult(CheckResult.CHECK_NOK);
+            else
+                sub.setResult(CheckResult.CHECK_OK);
+            rate.addSubCheck(sub);
+        }
+        propagateResult(rate, _root_strictness);
+        return rate;
+    }
+
+    private CheckResponse doCollectorCheck() {
+        CheckResponse result = new CheckResponse("GC per collector", "Statistics per collector and action");
+        for (GCBucket bucket : gcBuckets.getBuckets())
+            result.addSubCheck(checkBucket(bucket));
+        propagateResult(result, _root_strictness);
+        return result;
+    }
+
+    private CheckResponse checkBucket(GCBucket bucket) {
+        GCDataContainer container = bucket.getContainer();
+        // full pauses are checked against the major GC limits, all other pauses against the minor GC limits
+        GarbageCollectionCheckerSubConfiguration config = bucket.getKind() == GCEventKind.FULL ? _major : _minor;
+        CheckResponse result = new CheckResponse(bucket.toString(),
+                "Statistics for '" + bucket.getAction() + "' of " + bucket.getCollector());
+        StatSummary[] durations = channel(container.getSummaries(), container, GCDataContainer.DURATION);
+        String[] periodTitles = container.getPeriodTitle();
+        for (int i = 0; i < periodTitles.length; i++) {
+            CheckResponse sub = new CheckResponse(bucket + " - " + periodTitles[i], "Statistics over the " + periodTitles[i]);
+            StatSummary sum = durations[i];
+
+            double frequency = ((double) sum.getCount()) / sum.getDuration() * 60000;
+            String avg = formatDuration((long) sum.getAvg(), _time_exact);
+            String max = formatDuration((long) sum.getMax(), _time_exact);
+            String p99 = formatDuration((long) sum.getP99(), _time_exact);
+
+            if (!bucket.getKind().isPause()) {
+                // concurrent cycles do not stop the application
+                sub.setMessage(String.format("%.2f runs per minute, cycle time %s / %s (p99 %s)", frequency, avg, max, p99));
+                sub.setResult(CheckResult.CHECK_OK);
+            } else {
+                sub.setMessage(String.format("%.2f runs per minute, pause time %s / %s (p99 %s)", frequency, avg, max, p99));
+                if (sum.getCount() > 0 && sum.getAvg() > config.max_duration)
+                    sub.setResult(CheckResult.CHECK_NOK);
+                else
+                    sub.setResult(CheckResult.CHECK_OK);
+            }
+            result.addSubCheck(sub);
+        }
+        propagateResult(result, config.innerStrictness);
+        return result;
+    }
+
+    private CheckResponse checkRate(String title, GCDataContainer container, int window, GarbageCollectionCheckerSubConfiguration config) {
+        CheckResponse sub = new CheckResponse("GC rate - " + title, "Exponentially weighted moving average over " + title);
+
+        // runs per minute, bytes per second, milliseconds per second
+        double frequency = rate(container.getRunRate(), window) * 60;
+        double reclaimed = rate(container.getReclaimRate(), window);
+        double gcTime = rate(container.getGcTimeRate(), window);
+
+        sub.setMessage(String.format("%.2f runs per minute, %s/s reclaimed, %.2fms/s in GC",
+                frequency, formatDataSize((long) reclaimed, _memory_exact), gcTime));
+        if (frequency > config.max_frequency)
+            sub.setResult(CheckResult.CHECK_NOK);
+        else
+            sub.setResult(CheckResult.CHECK_OK);
+        return sub;
+    }
+
+    private static double rate(RateMeter meter, int window) {
+        switch (window) {
+            case 0:
+                return meter.getOneMinuteRate();
+            case 1:
+                return meter.getFiveMinuteRate();
+            default:
+                return meter.getFifteenMinuteRate();
+        }
+    }
+
+    /**
+     * @return the summaries of a named channel over all periods
+     */
+    private static StatSummary[] channel(StatSummary[][] summaries, GCDataContainer container, String name) {
+        return summaries[container.getChannel(name).getIndex()];
+    }
+
     private CheckResponse checkPool(StatSummary[] summaries, String[] periodTitles, String poolName, long poolMax, float limit, float strictness) {
         CheckResponse usage = new CheckResponse(poolName + " usage after GC", "Usage of the memory pool '" + poolName + "' after the GC");
         for (int i = 0; i < periodTitles.length; i++) {
             CheckResponse sub = new CheckResponse(poolName + " usage - " + periodTitles[i], "Statistics over the " + periodTitles[i]);
             StatSummary sum = summaries[i];
 
-            double ratio = sum.getAvg() / poolMax;
-
             String min = formatDataSize((long) sum.getMin(), _memory_exact);
             String avg = formatDataSize((long) sum.getAvg(), _memory_exact);
             String max = formatDataSize((long) sum.getMax(), _memory_exact);
+
+            // the pool may not have a defined maximum (e.g. G1 young generation, Metaspace by default)
+            if (poolMax <= 0) {
+                sub.setMessage(String.format("%s / %s / %s (no maximum defined)", min, avg, max));
+                sub.setResult(CheckResult.CHECK_OK);
+                usage.addSubCheck(sub);
+                continue;
+            }
+
+            double ratio = sum.getAvg() / poolMax;
             String rat = String.format("%.2f", ratio * 100) + "%";
 
             sub.setMessage(String.format("%s / %s / %s (avg %s)", min, avg, max, rat));
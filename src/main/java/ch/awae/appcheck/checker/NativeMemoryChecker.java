@@ -0,0 +1,171 @@
+package ch.awae.appcheck.checker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.awae.appcheck.api.CheckResponse;
+import ch.awae.appcheck.api.CheckResult;
+import ch.awae.appcheck.api.IChecker;
+import ch.awae.appcheck.data.NativeMemoryDataContainer;
+import ch.awae.appcheck.statistics.StatChannel;
+import ch.awae.appcheck.statistics.StatSummary;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static ch.awae.appcheck.checker.CheckerUtilities.formatDataSize;
+import static ch.awae.appcheck.checker.CheckerUtilities.propagateResult;
+
+/**
+ * Checks the memory used outside of the Java heap
+ *
+ * The average usage over every statistics period is checked against a limit:
+ * <ul>
+ *     <li>every buffer pool (direct and mapped buffers) against {@code check.native.buffer.maxUsed}</li>
+ *     <li>Metaspace against {@code check.native.metaspace.maxUsed}</li>
+ *     <li>the compressed class space against a fraction of its maximum ({@code check.native.classSpace.maxRatio})</li>
+ *     <li>the total memory committed according to Native Memory Tracking against {@code check.native.nmt.maxCommitted}.
+ *     The NMT categories are only listed.</li>
+ * </ul>
+ * A negative limit disables the check of the source, the usage is still listed.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+public class NativeMemoryChecker implements IChecker {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final NativeMemoryDataContainer container;
+
+    private final boolean _isEnabled;
+    private final float _strictness;
+    private final boolean _memory_exact;
+    private final long _max_buffer, _max_metaspace, _max_nmt_committed;
+    private final double _max_class_space;
+
+    /**
+     * @param properties the checker properties
+     * @param container the sampled native memory usage, {@code null} if sampling is not enabled
+     */
+    public NativeMemoryChecker(final Properties properties, final NativeMemoryDataContainer container) {
+        this.container = container;
+
+        _isEnabled = container != null && Boolean.parseBoolean(properties.getProperty("check.native.enabled"));
+        logger.debug("native memory check enabled? " + _isEnabled);
+
+        if (_isEnabled) {
+            float default_strictness = Float.parseFloat(properties.getProperty("check.common.strictness"));
+            _strictness = CheckerUtilities.getStrictness(properties.getProperty("check.native.strictness"), -1, default_strictness);
+            _memory_exact = Boolean.parseBoolean(properties.getProperty("check.native.exactSize"));
+            _max_buffer = Long.parseLong(properties.getProperty("check.native.buffer.maxUsed"));
+            _max_metaspace = Long.parseLong(properties.getProperty("check.native.metaspace.maxUsed"));
+            _max_class_space = Double.parseDouble(properties.getProperty("check.native.classSpace.maxRatio"));
+            _max_nmt_committed = Long.parseLong(properties.getProperty("check.native.nmt.maxCommitted"));
+        } else {
+            _strictness = 0;
+            _memory_exact = false;
+            _max_buffer = 0;
+            _max_metaspace = 0;
+            _max_class_space = 0;
+            _max_nmt_committed = 0;
+        }
+    }
+
+    @Override
+    public CheckResponse doCheck(String uid) {
+        if (!_isEnabled)
+            return null;
+
+        CheckResponse response = new CheckResponse("Native Memory Check", "Check des Speichers ausserhalb des Java Heaps");
+
+        try {
+            // snapshot the NMT categories first, the summaries then cover all of them
+            List<StatChannel> nmtChannels = new ArrayList<>(container.getNmtChannels());
+            StatSummary[][] summaries = container.getSummaries();
+            String[] periodTitles = container.getPeriodTitle();
+
+            CheckResponse buffers = new CheckResponse("Buffer pools", "Memory used by direct and mapped buffers");
+            for (StatChannel channel : container.getBufferChannels()) {
+                String pool = channel.getName().substring(NativeMemoryDataContainer.BUFFER_PREFIX.length());
+                buffers.addSubCheck(checkUsage(summaries[channel.getIndex()], periodTitles, "Buffer pool " + pool,
+                        "Memory used by the buffer pool '" + pool + "'", _max_buffer));
+            }
+            propagateResult(buffers, _strictness);
+            response.addSubCheck(buffers);
+
+            response.addSubCheck(checkUsage(channel(summaries, NativeMemoryDataContainer.METASPACE), periodTitles,
+                    "Metaspace", "Memory used by class metadata", _max_metaspace));
+
+            long classSpaceMax = container.getClassSpaceMax();
+            response.addSubCheck(checkUsage(channel(summaries, NativeMemoryDataContainer.CLASS_SPACE), periodTitles,
+                    "Compressed Class Space", "Memory used by compressed class pointers",
+                    classSpaceMax > 0 && _max_class_space >= 0 ? (long) (_max_class_space * classSpaceMax) : -1));
+
+            if (container.isNmtEnabled())
+                response.addSubCheck(doNmtCheck(nmtChannels, summaries, periodTitles));
+
+            propagateResult(response, _strictness);
+
+        } catch (RuntimeException rte) {
+            response.setError(rte);
+        }
+
+        return response;
+    }
+
+    private CheckResponse doNmtCheck(List<StatChannel> channels, StatSummary[][] summaries, String[] periodTitles) {
+        CheckResponse result = new CheckResponse("Native Memory Tracking", "Committed memory according to NMT");
+        for (StatChannel channel : channels) {
+            if (channel.getName().equals(NativeMemoryDataContainer.NMT_TOTAL)) {
+                result.addSubCheck(checkUsage(summaries[channel.getIndex()], periodTitles, "NMT total",
+                        "Total committed memory", _max_nmt_committed));
+            } else {
+                String category = channel.getName().substring(NativeMemoryDataContainer.NMT_PREFIX.length());
+                result.addSubCheck(checkUsage(summaries[channel.getIndex()], periodTitles, "NMT " + category,
+                        "Committed memory of the category '" + category + "'", -1));
+            }
+        }
+        propagateResult(result, _strictness);
+        return result;
+    }
+
+    private StatSummary[] channel(StatSummary[][] summaries, String name) {
+        return summaries[container.getChannel(name).getIndex()];
+    }
+
+    /**
+     * @param limit the maximum average usage in bytes, negative if not checked
+     */
+    private CheckResponse checkUsage(StatSummary[] summaries, String[] periodTitles, String title, String description, long limit) {
+        CheckResponse usage = new CheckResponse(title, description);
+        for (int i = 0; i < periodTitles.length; i++) {
+            CheckResponse sub = new CheckResponse(title + " - " + periodTitles[i], "Statistics over the " + periodTitles[i]);
+            StatSummary sum = summaries[i];
+
+            if (sum.getCount() == 0) {
+                sub.setMessage("no data available");
+                sub.setResult(CheckResult.CHECK_OK);
+                usage.addSubCheck(sub);
+                continue;
+            }
+
+            String min = formatDataSize((long) sum.getMin(), _memory_exact);
+            String avg = formatDataSize((long) sum.getAvg(), _memory_exact);
+            String max = formatDataSize((long) sum.getMax(), _memory_exact);
+
+            if (limit < 0) {
+                sub.setMessage(String.format("%s / %s / %s", min, avg, max));
+                sub.setResult(CheckResult.CHECK_OK);
+            } else {
+                sub.setMessage(String.format("%s / %s / %s (limit %s)", min, avg, max, formatDataSize(limit, _memory_exact)));
+                sub.setResult(sum.getAvg() > limit ? CheckResult.CHECK_NOK : CheckResult.CHECK_OK);
+            }
+            usage.addSubCheck(sub);
+        }
+        propagateResult(usage, _strictness);
+        return usage;
+    }
+
+}
@@ -10,11 +10,19 @@ import ch.awae.appcheck.api.IChecker;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 /**
  * provides a list of all currently running threads
  *
+ * The CPU time of all threads is read in bulk ({@code com.sun.management.ThreadMXBean}) where
+ * available. Every check keeps its sample, the CPU usage is reported since the previous check
+ * (since VM start for the first check). In mode {@code all} only the top consumers are listed.
+ *
  * @author Andreas Wälchli
  * @version 1.1
  */
@@ -23,12 +31,23 @@ public class ThreadChecker implements IChecker {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private final ThreadMXBean bean;
+    // bulk CPU time access, null if the JVM does not provide it
+    private final com.sun.management.ThreadMXBean bulkBean;
 
     private final boolean _isEnabled;
     private final int _cpuTimeMode;
+    private final int _top;
+
+    // previous sample: CPU time in nanoseconds per thread id
+    private Map<Long, Long> previousCpuTimes = null;
+    private long previousSampleTime;
 
     public ThreadChecker(final Properties properties) {
         this.bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            this.bulkBean = (com.sun.management.ThreadMXBean) bean;
+        else
+            this.bulkBean = null;
 
         _isEnabled = Boolean.parseBoolean(properties.getProperty("check.thread.enabled"));
         logger.debug("thread check enabled? " + _isEnabled);
@@ -43,10 +62,12 @@ public class ThreadChecker implements IChecker {
                 _cpuTimeMode = 0;
             else
                 throw new IllegalArgumentException("unknown cpuTime mode: " + mode);
+            _top = Integer.parseInt(properties.getProperty("check.thread.cpuTime.top", "10"));
 
             logger.debug("thread cpu time mode = " + _cpuTimeMode);
         } else {
             _cpuTimeMode = 0;
+            _top = 0;
         }
     }
 
@@ -69,30 +90,8 @@ public class ThreadChecker implements IChecker {
 
             response.addSubCheck(threadCount);
             response.addSubCheck(peakCount);
-            if (_cpuTimeMode > 0) {
-
-                CheckResponse cpuResp = new CheckResponse("CPU Time", "CPU Time");
-
-                long acc = 0L;
-                long[] ids = bean.getAllThreadIds();
-                for (long id : ids) {
-                    long time = (bean.getThreadCpuTime(id) / 1000);
-                    ThreadInfo info = bean.getThreadInfo(id);
-                    acc += time;
-                    if (_cpuTimeMode == 2) {
-                        CheckResponse resp = new CheckResponse("Thread " + info + " (#time)", "Thread CPU Time");
-                        resp.setMessage(CheckerUtilities.formatDuration(time, true));
-                        resp.setResult(CheckResult.CHECK_OK);
-                        cpuResp.addSubCheck(resp);
-                    }
-                }
-
-                cpuResp.setMessage(CheckerUtilities.formatDuration(acc, true));
-                cpuResp.setResult(CheckResult.CHECK_OK);
-
-                response.addSubCheck(cpuResp);
-
-            }
+            if (_cpuTimeMode > 0)
+                response.addSubCheck(doCpuTimeCheck());
 
             response.setResult(CheckResult.CHECK_OK);
 
@@ -102,4 +101,87 @@ public class ThreadChecker implements IChecker {
 
         return response;
     }
+
+    private synchronized CheckResponse doCpuTimeCheck() {
+        final long[] ids = bean.getAllThreadIds();
+        final long[] times = cpuTimes(ids);
+        final long now = System.nanoTime();
+
+        // the first check covers the whole VM lifetime
+        long elapsed = previousCpuTimes == null
+                ? ManagementFactory.getRuntimeMXBean().getUptime() * 1000000L
+                : now - previousSampleTime;
+        String interval = previousCpuTimes == null ? "since VM start" : "since the previous check";
+
+        Map<Long, Long> currentCpuTimes = new HashMap<>(ids.length * 2);
+        final long[] deltas = new long[ids.length];
+        long total = 0L, totalDelta = 0L;
+        for (int i = 0; i < ids.length; i++) {
+            // -1: the thread has terminated or CPU time measurement is disabled
+            if (times[i] < 0)
+                continue;
+            currentCpuTimes.put(ids[i], times[i]);
+            Long previous = previousCpuTimes == null ? null : previousCpuTimes.get(ids[i]);
+            deltas[i] = previous == null ? times[i] : Math.max(0, times[i] - previous);
+            total += times[i];
+            totalDelta += deltas[i];
+        }
+        previousCpuTimes = currentCpuTimes;
+        previousSampleTime = now;
+
+        CheckResponse cpuResp = new CheckResponse("CPU Time", "CPU Time");
+        cpuResp.setMessage(String.format("%s total, %s %s (%s of %d processors)",
+                CheckerUtilities.formatDuration(total / 1000000, true),
+                CheckerUtilities.formatDuration(totalDelta / 1000000, true), interval,
+                percent(totalDelta, elapsed * Runtime.getRuntime().availableProcessors()),
+                Runtime.getRuntime().availableProcessors()));
+        cpuResp.setResult(CheckResult.CHECK_OK);
+
+        if (_cpuTimeMode == 2) {
+            Integer[] order = new Integer[ids.length];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Long.compare(deltas[b], deltas[a]);
+                }
+            });
+            int count = Math.min(_top, order.length);
+            long[] topIds = new long[count];
+            for (int i = 0; i < count; i++)
+                topIds[i] = ids[order[i]];
+            // stack traces are not needed, only the names of the top threads are read
+            ThreadInfo[] infos = bean.getThreadInfo(topIds);
+            for (int i = 0; i < count; i++) {
+                int index = order[i];
+                if (infos[i] == null || times[index] < 0)
+                    continue;
+                CheckResponse resp = new CheckResponse("Thread " + infos[i].getThreadName() + " (#" + ids[index] + ")", "Thread CPU Time");
+                resp.setMessage(String.format("%s CPU %s (%s), %s total", percent(deltas[index], elapsed), interval,
+                        CheckerUtilities.formatDuration(deltas[index] / 1000000, true),
+                        CheckerUtilities.formatDuration(times[index] / 1000000, true)));
+                resp.setResult(CheckResult.CHECK_OK);
+                cpuResp.addSubCheck(resp);
+            }
+        }
+
+        return cpuResp;
+    }
+
+    /**
+     * @return the CPU time of every thread in nanoseconds, -1 for terminated threads
+     */
+    private long[] cpuTimes(long[] ids) {
+        if (bulkBean != null)
+            return bulkBean.getThreadCpuTime(ids);
+        long[] times = new long[ids.length];
+        for (int i = 0; i < ids.length; i++)
+            times[i] = bean.getThreadCpuTime(ids[i]);
+        return times;
+    }
+
+    private static String percent(long part, long whole) {
+        return String.format("%.1f%%", whole > 0 ? part * 100.0 / whole : 0);
+    }
 }
@@ -0,0 +1,132 @@
+package ch.awae.appcheck.data;
+
+import com.sun.management.GcInfo;
+
+import ch.awae.appcheck.statistics.StatChannel;
+import ch.awae.appcheck.statistics.StatManager;
+import ch.awae.appcheck.statistics.StatSummary;
+
+import java.io.IOException;
+
+/**
+ * Data container holding allocation and promotion rates.
+ *
+ * The rates are derived from consecutive GC events of all collectors:
+ * <ul>
+ *     <li>allocation rate: growth of the heap between the end of a collection and the start of
+ *     the next one, divided by the time in between. The heap only grows by allocation between
+ *     two collections, so this works for generational and non-generational collectors alike.
+ *     For concurrent collectors, allocations during a cycle are not included.</li>
+ *     <li>promotion rate: growth of the old generation during a young pause, divided by the
+ *     time since the end of the previous young pause.</li>
+ * </ul>
+ *
+ * Events without any heap usage (e.g. ZGC and Shenandoah pauses) are ignored.
+ * Events overlapping the previous one yield no rate.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+@SuppressWarnings("restriction")
+public class AllocationDataContainer {
+
+    /**
+     * channel: allocation rate in bytes per second
+     */
+    public static final String ALLOCATION_RATE = "allocation.rate";
+    /**
+     * channel: promotion rate in bytes per second
+     */
+    public static final String PROMOTION_RATE = "promotion.rate";
+
+    private final StatManager manager;
+    private final StatChannel allocationRate, promotionRate;
+    private final MemoryPools memoryPools = new MemoryPools();
+
+    private final long[] used = MemoryPools.perRole();
+
+    // state of the previous events (JVM uptime in ms), -1 if there was none yet
+    private long lastEnd = -1;
+    private long lastHeapAfter;
+    private long lastYoungEnd = -1;
+
+    /**
+     * @param name the name of the container. Used to name the statistics files if persistence is enabled.
+     */
+    public AllocationDataContainer(String name) throws IOException {
+        manager = GCDataContainer.buildStatManager(name);
+        // the registration order must stay the same for persisted statistics
+        allocationRate = manager.register(ALLOCATION_RATE);
+        promotionRate = manager.register(PROMOTION_RATE);
+    }
+
+    public StatSummary[][] getSummaries() {
+        return manager.getAllSummaries();
+    }
+
+    /**
+     * @return the handle of a channel, or {@code null} if there is no such channel
+     */
+    public StatChannel getChannel(String name) {
+        return manager.getChannel(name);
+    }
+
+    public String[] getPeriodTitle() {
+        return manager.getPeriodTitles();
+    }
+
+    /**
+     * record a GC event. Must not be called concurrently.
+     *
+     * @param gcinfo the data set of the event
+     * @param kind the kind of the event
+     */
+    public void handle(GcInfo gcinfo, GCEventKind kind) {
+        memoryPools.sum(gcinfo.getMemoryUsageBeforeGc(), used, null);
+        long heapBefore = heap();
+        long oldBefore = used[MemoryPoolRole.OLD.ordinal()];
+        memoryPools.sum(gcinfo.getMemoryUsageAfterGc(), used, null);
+        long heapAfter = heap();
+        long oldAfter = used[MemoryPoolRole.OLD.ordinal()];
+
+        if (heapBefore == 0 && heapAfter == 0)
+            return;
+
+        long start = gcinfo.getStartTime();
+        long end = gcinfo.getEndTime();
+
+        if (lastEnd >= 0 && start > lastEnd)
+            manager.addValue(allocationRate, rate(heapBefore - lastHeapAfter, start - lastEnd));
+        if (kind == GCEventKind.YOUNG) {
+            if (lastYoungEnd >= 0 && end > lastYoungEnd)
+                manager.addValue(promotionRate, rate(oldAfter - oldBefore, end - lastYoungEnd));
+            lastYoungEnd = end;
+        }
+
+        // notifications of different collectors may arrive out of order
+        if (end >= lastEnd) {
+            lastEnd = end;
+            lastHeapAfter = heapAfter;
+        }
+    }
+
+    /**
+     * Flushes the recorded statistics if persistence is enabled
+     */
+    public void close() {
+        manager.close();
+    }
+
+    private long heap() {
+        return used[MemoryPoolRole.EDEN.ordinal()] + used[MemoryPoolRole.SURVIVOR.ordinal()]
+                + used[MemoryPoolRole.OLD.ordinal()];
+    }
+
+    /**
+     * @return bytes per second, negative growth counts as 0
+     */
+    private static double rate(long bytes, long millis) {
+        return Math.max(0, bytes) * 1000.0 / millis;
+    }
+
+}
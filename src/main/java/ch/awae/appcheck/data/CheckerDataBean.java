@@ -4,12 +4,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.ejb.Singleton;
 import javax.ejb.Startup;
+import javax.management.ListenerNotFoundException;
 import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import ch.awae.appcheck.checker.CheckerUtilities;
+
 import java.io.IOException;
 import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
+import java.util.Properties;
 
 /**
  * AppCheck Data Singleton Bean
@@ -26,20 +33,78 @@ public class CheckerDataBean {
 
     private Logger logger = LoggerFactory.getLogger(this.getClass());
     private final GCNotificationHandler gcNotificationHandler;
+    private final GCNotificationPipeline gcNotificationPipeline;
 
     // DATA CONTAINERS
     private final GCDataContainer minorGcData;
     private final GCDataContainer majorGcData;
+    private final GCBuckets gcBuckets;
+    private final AllocationDataContainer allocationData;
+    private final GCCauseContainer gcCauses;
+    private final GCEventLog gcEventLog;
+    private final MemoryThresholdMonitor memoryThresholds;
+    private final JfrDataContainer jfrData;
+    private JfrEventSource jfrSource;
+    private final long jfrMaxAge, jfrMaxSize;
+    private final NativeMemoryDataContainer nativeMemoryData;
 
     public CheckerDataBean() throws IOException {
-        this.minorGcData = new GCDataContainer();
-        this.majorGcData = new GCDataContainer();
-        this.gcNotificationHandler = new GCNotificationHandler(this.minorGcData, this.majorGcData);
+        final Properties properties = CheckerUtilities.loadProperties(System.getProperty("servicecheck.props"));
+        this.minorGcData = new GCDataContainer("minor");
+        this.majorGcData = new GCDataContainer("major");
+        this.gcBuckets = new GCBuckets();
+        this.allocationData = new AllocationDataContainer("allocation");
+        this.gcCauses = new GCCauseContainer("causes", properties);
+        this.memoryThresholds = new MemoryThresholdMonitor(properties);
+        this.gcEventLog = new GCEventLog(Integer.parseInt(properties.getProperty("check.gc.events.capacity", "512")));
+        if (Boolean.parseBoolean(properties.getProperty("check.gc.jfr.enabled", "false")) && JfrEventSource.isAvailable())
+            this.jfrData = new JfrDataContainer("jfr");
+        else
+            this.jfrData = null;
+        this.jfrMaxAge = Long.parseLong(properties.getProperty("check.gc.jfr.maxAge", "60000"));
+        this.jfrMaxSize = Long.parseLong(properties.getProperty("check.gc.jfr.maxSize", "10485760"));
+        if (Boolean.parseBoolean(properties.getProperty("check.native.enabled", "false")))
+            this.nativeMemoryData = new NativeMemoryDataContainer("native", properties);
+        else
+            this.nativeMemoryData = null;
+        long logInterval = Long.parseLong(properties.getProperty("check.gc.log.interval", "60000"));
+        this.gcNotificationHandler = new GCNotificationHandler(this.minorGcData, this.majorGcData, this.gcBuckets,
+                this.allocationData, this.gcCauses, this.gcEventLog, logInterval);
+        if (Boolean.parseBoolean(properties.getProperty("check.gc.pipeline.async", "true")))
+            this.gcNotificationPipeline = new GCNotificationPipeline(this.gcNotificationHandler,
+                    Integer.parseInt(properties.getProperty("check.gc.pipeline.capacity", "1024")),
+                    Long.parseLong(properties.getProperty("check.gc.pipeline.lateThreshold", "1000")),
+                    logInterval);
+        else
+            this.gcNotificationPipeline = null;
     }
 
     @PostConstruct
     private void init() {
         registerGCNotification();
+        memoryThresholds.start();
+        startJfr();
+        if (nativeMemoryData != null)
+            nativeMemoryData.start();
+    }
+
+    @PreDestroy
+    private void destroy() {
+        unregisterGCNotification();
+        memoryThresholds.stop();
+        if (jfrSource != null)
+            jfrSource.close();
+        if (gcNotificationPipeline != null)
+            gcNotificationPipeline.close();
+        minorGcData.close();
+        majorGcData.close();
+        gcBuckets.close();
+        allocationData.close();
+        gcCauses.close();
+        if (jfrData != null)
+            jfrData.close();
+        if (nativeMemoryData != null)
+            nativeMemoryData.close();
     }
 
     /**
@@ -51,10 +116,42 @@ public class CheckerDataBean {
         for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
             logger.info("registering GC bean " + bean.getName());
             NotificationEmitter emitter = (NotificationEmitter) bean;
-            emitter.addNotificationListener(gcNotificationHandler, null, null);
+            emitter.addNotificationListener(listener(), null, null);
+        }
+    }
+
+    /**
+     * Starts streaming JFR events if enabled. JFR streaming requires Java 14 or later.
+     */
+    private void startJfr() {
+        if (jfrData == null)
+            return;
+        try {
+            jfrSource = new JfrEventSource(jfrData, jfrMaxAge, jfrMaxSize);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.warn("unable to stream JFR events", e);
+        }
+    }
+
+    private void unregisterGCNotification() {
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            try {
+                ((NotificationEmitter) bean).removeNotificationListener(listener());
+            } catch (ListenerNotFoundException e) {
+                logger.warn("GC bean " + bean.getName() + " was not registered");
+            }
         }
     }
 
+    /**
+     * @return the pipeline if notifications are processed asynchronously, the handler otherwise
+     */
+    private NotificationListener listener() {
+        if (gcNotificationPipeline != null)
+            return gcNotificationPipeline;
+        return gcNotificationHandler;
+    }
+
     public GCDataContainer getMinorGCDataContainer() {
         return this.minorGcData;
     }
@@ -63,4 +160,60 @@ public class CheckerDataBean {
         return this.majorGcData;
     }
 
+    /**
+     * @return the memory pool thresholds and their breaches
+     */
+    public MemoryThresholdMonitor getMemoryThresholds() {
+        return this.memoryThresholds;
+    }
+
+    /**
+     * @return the data recorded from JFR events, or {@code null} if JFR streaming is not enabled or not available
+     */
+    public JfrDataContainer getJfrDataContainer() {
+        return this.jfrData;
+    }
+
+    /**
+     * @return the sampled off-heap and native memory usage, or {@code null} if the native memory check is not enabled
+     */
+    public NativeMemoryDataContainer getNativeMemoryDataContainer() {
+        return this.nativeMemoryData;
+    }
+
+    /**
+     * @return the GC pause statistics per cause
+     */
+    public GCCauseContainer getGcCauses() {
+        return this.gcCauses;
+    }
+
+    /**
+     * @return the allocation and promotion rates
+     */
+    public AllocationDataContainer getAllocationDataContainer() {
+        return this.allocationData;
+    }
+
+    /**
+     * @return the statistics per collector and action
+     */
+    public GCBuckets getGcBuckets() {
+        return this.gcBuckets;
+    }
+
+    /**
+     * @return the log of the most recent raw GC events
+     */
+    public GCEventLog getGcEventLog() {
+        return this.gcEventLog;
+    }
+
+    /**
+     * @return the asynchronous notification pipeline, or {@code null} if notifications are processed synchronously
+     */
+    public GCNotificationPipeline getGcNotificationPipeline() {
+        return this.gcNotificationPipeline;
+    }
+
 }
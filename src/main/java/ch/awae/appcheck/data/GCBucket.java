@@ -0,0 +1,54 @@
+package ch.awae.appcheck.data;
+
+/**
+ * Statistics of all GC events of a single collector bean, action and {@link GCEventKind kind}.
+ * The kind only differs between events of the same collector and action for CMS.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ *
+ * @see GCBuckets
+ */
+public final class GCBucket {
+
+    private final String collector;
+    private final String action;
+    private final GCEventKind kind;
+    private final GCDataContainer container;
+
+    GCBucket(String collector, String action, GCEventKind kind, GCDataContainer container) {
+        this.collector = collector;
+        this.action = action;
+        this.kind = kind;
+        this.container = container;
+    }
+
+    public String getCollector() {
+        return collector;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public GCEventKind getKind() {
+        return kind;
+    }
+
+    public GCDataContainer getContainer() {
+        return container;
+    }
+
+    /**
+     * @return true if the bucket holds the events of the given collector, action and kind
+     */
+    boolean matches(String collector, String action, GCEventKind kind) {
+        return this.kind == kind && this.collector.equals(collector) && this.action.equals(action);
+    }
+
+    @Override
+    public String toString() {
+        return collector + " - " + action + " (" + kind.getTitle() + ")";
+    }
+
+}
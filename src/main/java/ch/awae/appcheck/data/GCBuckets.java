@@ -0,0 +1,74 @@
+package ch.awae.appcheck.data;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Per collector and action statistics.
+ *
+ * A bucket with its own {@link GCDataContainer} is created the first time a
+ * collector bean reports an action of a {@link GCEventKind kind}. A JVM only reports
+ * a handful of different combinations, so buckets are looked up by a linear scan and
+ * never removed.
+ *
+ * Buckets are created by the thread processing the GC notifications only.
+ * Readers may iterate the buckets concurrently.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+public class GCBuckets {
+
+    private final List<GCBucket> buckets = new CopyOnWriteArrayList<>();
+
+    /**
+     * @return the bucket of a collector and action, created if necessary. The kind of the event
+     *         is determined from all three parameters.
+     * @throws IllegalStateException if the statistics of a new bucket cannot be created
+     */
+    GCBucket get(String collector, String action, String cause) {
+        GCEventKind kind = GCEventKind.of(collector, action, cause);
+        for (GCBucket bucket : buckets)
+            if (bucket.matches(collector, action, kind))
+                return bucket;
+        try {
+            GCBucket bucket = new GCBucket(collector, action, kind, new GCDataContainer(containerName(collector, action, kind)));
+            buckets.add(bucket);
+            return bucket;
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to create statistics for " + collector + " / " + action, e);
+        }
+    }
+
+    /**
+     * @return all buckets in the order of their creation
+     */
+    public List<GCBucket> getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * Flushes the statistics of all buckets if persistence is enabled
+     */
+    public void close() {
+        for (GCBucket bucket : buckets)
+            bucket.getContainer().close();
+    }
+
+    /**
+     * @return a name usable in file names, e.g. "g1-young-generation.end-of-minor-gc". The kind is only
+     *         appended if it is not the one implied by collector and action (CMS full pauses).
+     */
+    private static String containerName(String collector, String action, GCEventKind kind) {
+        String name = sanitize(collector) + "." + sanitize(action);
+        if (kind != GCEventKind.of(collector, action))
+            name += "." + sanitize(kind.getTitle());
+        return name;
+    }
+
+    private static String sanitize(String name) {
+        return name.toLowerCase().replaceAll("[^a-z0-9]+", "-").replaceAll("^-|-$", "");
+    }
+
+}
@@ -0,0 +1,92 @@
+package ch.awae.appcheck.data;
+
+import ch.awae.appcheck.statistics.StatChannel;
+import ch.awae.appcheck.statistics.StatManager;
+import ch.awae.appcheck.statistics.StatSummary;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Data container holding GC pause durations per GC cause.
+ *
+ * Every cause gets its own channel the first time it is reported. The number of
+ * causes is bounded, all further causes share the {@link #OVERFLOW overflow channel}.
+ * Only pauses are recorded, concurrent cycles do not stop the application.
+ *
+ * The causes are registered in the order they are reported, which differs from run
+ * to run. The statistics are therefore never persisted.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+public class GCCauseContainer {
+
+    /**
+     * name of the channel collecting all causes beyond the maximum number of causes
+     */
+    public static final String OVERFLOW = "other causes";
+
+    private final StatManager manager;
+    private final int maxCauses;
+    private final List<StatChannel> causes = new CopyOnWriteArrayList<>();
+    private StatChannel overflow = null;
+
+    /**
+     * @param name the name of the container
+     * @param properties the checker properties
+     */
+    public GCCauseContainer(String name, Properties properties) throws IOException {
+        manager = GCDataContainer.buildStatManager(name, properties, false);
+        maxCauses = Integer.parseInt(properties.getProperty("check.gc.causes.max", "16"));
+    }
+
+    /**
+     * record a GC pause. Must not be called concurrently.
+     *
+     * @param cause the cause of the pause
+     * @param duration the duration of the pause in milliseconds
+     */
+    public void handle(String cause, long duration) {
+        manager.addValue(channel(cause), duration);
+    }
+
+    private StatChannel channel(String cause) {
+        // few causes, a linear scan is cheaper than hashing the cause
+        for (StatChannel channel : causes)
+            if (channel.getName().equals(cause))
+                return channel;
+        if (causes.size() < maxCauses) {
+            StatChannel channel = manager.register(cause);
+            causes.add(channel);
+            return channel;
+        }
+        if (overflow == null) {
+            overflow = manager.register(OVERFLOW);
+            causes.add(overflow);
+        }
+        return overflow;
+    }
+
+    /**
+     * @return the channels of all causes in the order of their first occurrence, including the overflow channel
+     */
+    public List<StatChannel> getCauses() {
+        return causes;
+    }
+
+    public StatSummary[][] getSummaries() {
+        return manager.getAllSummaries();
+    }
+
+    public String[] getPeriodTitle() {
+        return manager.getPeriodTitles();
+    }
+
+    public void close() {
+        manager.close();
+    }
+
+}
@@ -3,15 +3,20 @@ package ch.awae.appcheck.data;
 import com.sun.management.GcInfo;
 
 import ch.awae.appcheck.checker.CheckerUtilities;
+import ch.awae.appcheck.statistics.HistogramLayout;
+import ch.awae.appcheck.statistics.IngestionMode;
+import ch.awae.appcheck.statistics.LinearTrend;
+import ch.awae.appcheck.statistics.MappedStatStore;
 import ch.awae.appcheck.statistics.PeriodConfig;
+import ch.awae.appcheck.statistics.RateMeter;
+import ch.awae.appcheck.statistics.StatChannel;
 import ch.awae.appcheck.statistics.StatManager;
 import ch.awae.appcheck.statistics.StatSummary;
+import ch.awae.appcheck.statistics.SummaryCodec;
 
+import java.io.File;
 import java.io.IOException;
-import java.lang.management.MemoryUsage;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.lang.management.ManagementFactory;
 import java.util.Properties;
 
 /**
@@ -23,74 +28,167 @@ import java.util.Properties;
 @SuppressWarnings("restriction")
 public class GCDataContainer {
 
+    /**
+     * channel: GC duration in milliseconds
+     */
+    public static final String DURATION = "duration";
+    /**
+     * channel: total memory usage after GC
+     */
+    public static final String MEMORY_AFTER = "memory.after";
+    /**
+     * channel: total amount of memory cleared by GC
+     */
+    public static final String RECLAIMED = "memory.reclaimed";
+    /**
+     * channels: memory usage after GC for all 5 memory pool roles, in the order of {@link #POOL_ROLES}
+     */
+    public static final String[] POOLS = {"pool.eden", "pool.survivor", "pool.old", "pool.perm", "pool.code"};
+    /**
+     * the memory pool roles recorded, in the order of {@link #POOLS} and {@link #getPoolMax()}
+     */
+    public static final MemoryPoolRole[] POOL_ROLES = {
+            MemoryPoolRole.EDEN, MemoryPoolRole.SURVIVOR, MemoryPoolRole.OLD, MemoryPoolRole.METASPACE, MemoryPoolRole.CODE
+    };
+
     private StatManager manager;
+    private final StatChannel duration, memoryAfter, reclaimed;
+    private final StatChannel[] poolChannels = new StatChannel[POOLS.length];
+    private final MemoryPools memoryPools = new MemoryPools();
+
+    // maximum size per pool role, -1 if undefined
+    private final long[] poolMax = new long[POOL_ROLES.length];
 
-    private long[] poolMax = new long[5];
+    // old gen usage after GC over system time
+    private final LinearTrend oldGenTrend;
+    private final long jvmStartTime = ManagementFactory.getRuntimeMXBean().getStartTime();
 
-    public GCDataContainer() throws IOException {
-        manager = buildStatManager();
+    // moving averages
+    private final RateMeter runRate = new RateMeter();
+    private final RateMeter reclaimRate = new RateMeter();
+    private final RateMeter gcTimeRate = new RateMeter();
+
+    /**
+     * @param name the name of the container. Used to name the statistics files if persistence is enabled.
+     */
+    public GCDataContainer(String name) throws IOException {
+        final Properties properties = CheckerUtilities.loadProperties(System.getProperty("servicecheck.props"));
+        manager = buildStatManager(name, properties, true);
+        oldGenTrend = new LinearTrend(Long.parseLong(properties.getProperty("check.gc.leak.halfLife", "21600000")));
+        // the registration order must stay the same for persisted statistics
+        duration = manager.register(DURATION);
+        memoryAfter = manager.register(MEMORY_AFTER);
+        reclaimed = manager.register(RECLAIMED);
+        for (int i = 0; i < POOLS.length; i++)
+            poolChannels[i] = manager.register(POOLS[i]);
+        // the maxima are not persisted. take them from the pools until the first GC reports them
+        long[] max = MemoryPools.perRole();
+        memoryPools.currentMax(max);
+        for (int i = 0; i < POOL_ROLES.length; i++)
+            poolMax[i] = max[POOL_ROLES[i].ordinal()];
     }
 
     public StatSummary[][] getSummaries() {
         return manager.getAllSummaries();
     }
 
+    /**
+     * @return the handle of a channel, or {@code null} if there is no such channel
+     */
+    public StatChannel getChannel(String name) {
+        return manager.getChannel(name);
+    }
+
+    /**
+     * Encodes the current summaries for aggregation with other nodes
+     *
+     * @see ch.awae.appcheck.statistics.ClusterAggregator
+     */
+    public byte[] encodeSummaries() {
+        return SummaryCodec.encode(manager);
+    }
+
     /**
      * record a new data set
      *
      * @param gcinfo the data set to record
      */
     public void handle(GcInfo gcinfo) {
-        double[] values = new double[9];
-
-        // CHANNEL_0: GC Duration
-        values[0] = gcinfo.getDuration();
-        // CHANNEL_1: Total RAM after clear
-        values[1] = 0;
-
-        Map<String, MemoryUsage> afterMap = gcinfo.getMemoryUsageAfterGc();
-
-        // get memory objects
-        MemoryUsage eden = afterMap.get("PS Eden Space");
-        MemoryUsage survivor = afterMap.get("PS Survivor Space");
-        MemoryUsage old = afterMap.get("PS Old Gen");
-        MemoryUsage perm = afterMap.get("PS Perm Gen");
-        MemoryUsage code = afterMap.get("Code Cache");
-
-        // collect them into an array
-        MemoryUsage pools[] = {eden, survivor, old, perm, code};
-
-        // CHANNEL_3 -> CHANNEL_7 are memory pools
-        for (int i = 0; i < 5; i++) {
-            poolMax[i] = pools[i].getMax();
-            values[i + 3] = pools[i].getUsed();
-            values[1] += values[i + 3];
+        double[] values = new double[manager.getChannelCount()];
+        long[] used = MemoryPools.perRole();
+        long[] max = MemoryPools.perRole();
+
+        // GC Duration
+        values[duration.getIndex()] = gcinfo.getDuration();
+
+        // memory pools and total RAM after clear
+        memoryPools.sum(gcinfo.getMemoryUsageAfterGc(), used, max);
+        long totalAfter = 0;
+        for (int i = 0; i < POOL_ROLES.length; i++) {
+            int role = POOL_ROLES[i].ordinal();
+            poolMax[i] = max[role];
+            values[poolChannels[i].getIndex()] = used[role];
+            totalAfter += used[role];
         }
+        values[memoryAfter.getIndex()] = totalAfter;
 
-        // CHANNEL_2: RAM cleared
-        {
-            Map<String, MemoryUsage> beforeMap = gcinfo.getMemoryUsageBeforeGc();
-            // get memory objects
-            MemoryUsage _eden = beforeMap.get("PS Eden Space");
-            MemoryUsage _survivor = beforeMap.get("PS Survivor Space");
-            MemoryUsage _old = beforeMap.get("PS Old Gen");
-            MemoryUsage _perm = beforeMap.get("PS Perm Gen");
-            MemoryUsage _code = beforeMap.get("Code Cache");
-
-            long totalBefore =
-                      _eden.getUsed()
-                    + _survivor.getUsed()
-                    + _old.getUsed()
-                    + _perm.getUsed()
-                    + _code.getUsed();
-
-            values[2] = totalBefore - values[1];
-        }
+        // old gen trend. skip events without memory data (e.g. ZGC pauses)
+        if (totalAfter > 0)
+            oldGenTrend.add(jvmStartTime + gcinfo.getEndTime(), used[MemoryPoolRole.OLD.ordinal()]);
+
+        // RAM cleared
+        memoryPools.sum(gcinfo.getMemoryUsageBeforeGc(), used, null);
+        long totalBefore = 0;
+        for (MemoryPoolRole role : POOL_ROLES)
+            totalBefore += used[role.ordinal()];
+        // the pools not collected (e.g. old gen during a young pause, Metaspace) may grow meanwhile
+        values[reclaimed.getIndex()] = Math.max(0, totalBefore - totalAfter);
+
+        // update moving averages
+        runRate.mark(1);
+        reclaimRate.mark((long) values[reclaimed.getIndex()]);
+        gcTimeRate.mark(gcinfo.getDuration());
 
         // commit values
         manager.addDataPoint(values);
     }
 
+    /**
+     * moving average of the number of GC runs per second
+     */
+    public RateMeter getRunRate() {
+        return runRate;
+    }
+
+    /**
+     * moving average of the bytes reclaimed per second
+     */
+    public RateMeter getReclaimRate() {
+        return reclaimRate;
+    }
+
+    /**
+     * moving average of the milliseconds spent in GC per second
+     */
+    public RateMeter getGcTimeRate() {
+        return gcTimeRate;
+    }
+
+    /**
+     * @return the trend of the old gen usage after GC, over system time
+     */
+    public LinearTrend getOldGenTrend() {
+        return oldGenTrend;
+    }
+
+    public MemoryPools getMemoryPools() {
+        return memoryPools;
+    }
+
+    /**
+     * @return the maximum size per pool role as of the last GC, or as of startup before the first GC
+     *         (in the order of {@link #POOL_ROLES}), -1 if undefined
+     */
     public long[] getPoolMax() {
         return poolMax;
     }
@@ -99,43 +197,41 @@ public class GCDataContainer {
         return manager.getPeriodTitles();
     }
 
-    private static StatManager buildStatManager() throws IOException {
-        final Properties properties = CheckerUtilities.loadProperties(System.getProperty("servicecheck.props"));
-        String config = properties.getProperty("check.gc.stats");
+    /**
+     * Flushes the recorded statistics if persistence is enabled
+     */
+    public void close() {
+        manager.close();
+    }
 
-        List<PeriodConfig> accumulator = new ArrayList<>();
-
-        for (String part : config.split(";")) {
-            try {
-                if (part.equals("infinite")) {
-                    accumulator.add(PeriodConfig.INFINITE);
-                    continue;
-                }
-                String word[] = part.split(",");
-                if (word.length != 3)
-                    throw new IllegalArgumentException("illegal format in string: " + part);
-                // word length is ok
-                String desc = word[0];
-                long duration = Long.parseLong(word[1]);
-                int frames = Integer.parseInt(word[2]);
-                // create config
-                accumulator.add(new PeriodConfig(duration, frames, desc));
-            }catch
-                    (RuntimeException e) {
-                throw new IllegalArgumentException("invalid period configuration string: " + part, e);
-            }
-        }
+    /**
+     * @return a manager with the periods configured for the GC statistics, without any channels
+     */
+    static StatManager buildStatManager(String name) throws IOException {
+        return buildStatManager(name, CheckerUtilities.loadProperties(System.getProperty("servicecheck.props")), true);
+    }
+
+    /**
+     * @param persistent false to never persist the statistics, e.g. if the channels are not registered in a fixed order
+     */
+    static StatManager buildStatManager(String name, Properties properties, boolean persistent) throws IOException {
+        String config = properties.getProperty("check.gc.stats");
+        IngestionMode mode = IngestionMode.valueOf(
+                properties.getProperty("check.gc.stats.ingestion", "synchronized").toUpperCase());
+        HistogramLayout layout = HistogramLayout.parse(properties.getProperty("check.gc.stats.histogram", "40,4"));
 
         // construct manager
-        PeriodConfig configs[] = accumulator.toArray(new PeriodConfig[0]);
-        /*
-        There are 8 statistics channels:
-        -   0: GC duration in milliseconds
-        -   1: total memory usage after GC
-        -   2: total amount of memory cleared by GC
-        - 3-7: for all 5 memory pools: memory usage after GC
-         */
-        return new StatManager(8, configs);
+        PeriodConfig configs[] = PeriodConfig.parseAll(config);
+        // the channels are registered afterwards
+        String storeDirectory = properties.getProperty("check.gc.stats.store", "");
+        StatManager manager;
+        if (persistent && !storeDirectory.isEmpty())
+            manager = new StatManager(mode, layout, new MappedStatStore(new File(storeDirectory), "gc-" + name), 0, configs);
+        else
+            manager = new StatManager(mode, layout, 0, configs);
+        if (Boolean.parseBoolean(properties.getProperty("check.gc.stats.ticker", "true")))
+            manager.startTicker();
+        return manager;
     }
 
 }
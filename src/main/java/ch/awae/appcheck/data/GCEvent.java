@@ -0,0 +1,54 @@
+package ch.awae.appcheck.data;
+
+/**
+ * Read-only view of a single raw GC event recorded in a {@link GCEventLog}.
+ *
+ * Instances are flyweights: the same instance is moved over all records of a query
+ * and is only valid inside the {@link GCEventVisitor#visit(GCEvent)} call.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+public interface GCEvent {
+
+    /**
+     * the id of the collection, as provided by the collector
+     */
+    long getId();
+
+    /**
+     * the system time the collection started at
+     */
+    long getStartTime();
+
+    /**
+     * the system time the collection ended at
+     */
+    long getEndTime();
+
+    /**
+     * the duration of the collection in milliseconds
+     */
+    long getDuration();
+
+    String getCollector();
+
+    String getAction();
+
+    String getCause();
+
+    int getPoolCount();
+
+    String getPoolName(int pool);
+
+    /**
+     * the memory usage of a pool before the collection, or {@code -1} if unknown
+     */
+    long getUsageBefore(int pool);
+
+    /**
+     * the memory usage of a pool after the collection, or {@code -1} if unknown
+     */
+    long getUsageAfter(int pool);
+
+}
@@ -0,0 +1,95 @@
+package ch.awae.appcheck.data;
+
+/**
+ * Kind of a GC event, derived from the collector name and the action of a GC notification.
+ *
+ * Only pauses stop the application threads. Concurrent cycles report the duration of the
+ * whole cycle, most of which runs alongside the application. The pauses inside a concurrent
+ * cycle (e.g. G1 remark and cleanup, ZGC and Shenandoah pauses) are reported as
+ * {@link #CYCLE_PAUSE} by their own collector beans.
+ *
+ * CMS reports both its concurrent cycles and its stop-the-world foreground and fallback
+ * collections (concurrent mode failure, promotion failure) as "end of major GC" of the
+ * same bean. These are told apart by the GC cause, only the concurrent cycles have a
+ * CMS phase (or "No GC") as their cause.
+ *
+ * Up to Java 20, G1 reports mixed collections as "end of minor GC". They can only be told
+ * apart from young collections by JVMs reporting "end of mixed GC".
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+public enum GCEventKind {
+
+    YOUNG("young pause", true),
+    MIXED("mixed pause", true),
+    FULL("full pause", true),
+    /**
+     * pause belonging to a concurrent cycle
+     */
+    CYCLE_PAUSE("cycle pause", true),
+    /**
+     * concurrent cycle. Its duration is not a pause.
+     */
+    CONCURRENT("concurrent cycle", false);
+
+    private final String title;
+    private final boolean pause;
+
+    GCEventKind(String title, boolean pause) {
+        this.title = title;
+        this.pause = pause;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return true if the application threads are stopped for the duration of the event
+     */
+    public boolean isPause() {
+        return pause;
+    }
+
+    /**
+     * Classifies a GC event
+     *
+     * @param collector the name of the collector bean
+     * @param action the GC action of the notification
+     * @param cause the GC cause of the notification
+     */
+    public static GCEventKind of(String collector, String action, String cause) {
+        GCEventKind kind = of(collector, action);
+        // CMS foreground and fallback collections are full pauses
+        if (kind == CONCURRENT && collector.equals("ConcurrentMarkSweep") && !isCmsCycle(cause))
+            return FULL;
+        return kind;
+    }
+
+    /**
+     * Classifies a GC event by collector and action only. Events of the CMS bean reported as
+     * major GC are classified as concurrent cycles, regardless of their cause.
+     *
+     * @param collector the name of the collector bean
+     * @param action the GC action of the notification
+     */
+    public static GCEventKind of(String collector, String action) {
+        if (action.contains("mixed"))
+            return MIXED;
+        if (action.contains("minor"))
+            return YOUNG;
+        if (action.contains("major"))
+            // CMS reports its concurrent cycles as major GC
+            return collector.equals("ConcurrentMarkSweep") ? CONCURRENT : FULL;
+        if (action.contains("cycle"))
+            return CONCURRENT;
+        // "end of GC pause", "end of concurrent GC pause", Shenandoah phase names
+        return CYCLE_PAUSE;
+    }
+
+    private static boolean isCmsCycle(String cause) {
+        return cause.equals("CMS Initial Mark") || cause.equals("CMS Final Remark") || cause.equals("No GC");
+    }
+
+}
@@ -0,0 +1,272 @@
+package ch.awae.appcheck.data;
+
+import com.sun.management.GcInfo;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fixed-size ring buffer of raw GC events.
+ *
+ * The records are kept off-heap in a direct {@link ByteBuffer} with a fixed layout:
+ * <pre>
+ *     0  long  collection id
+ *     8  long  start time (system time)
+ *    16  long  end time (system time)
+ *    24  long  duration (ms)
+ *    32  int   collector name index
+ *    36  int   action index
+ *    40  int   cause index
+ *    44  int   reserved
+ *    48  per memory pool: long usage before GC, long usage after GC
+ * </pre>
+ *
+ * Collector names, actions and causes are interned into a bounded string table.
+ * Recording an event does not allocate once its strings are known. When the ring
+ * is full, the oldest event is overwritten.
+ *
+ * Recording and querying are synchronized. Visitors are called while the log is
+ * locked and should therefore return quickly.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+@SuppressWarnings("restriction")
+public class GCEventLog {
+
+    private static final int HEADER = 48;
+    private static final int MAX_STRINGS = 64;
+    private static final String UNKNOWN = "?";
+
+    private final int capacity;
+    private final int recordSize;
+    private final ByteBuffer buffer;
+    private final String[] poolNames;
+    private final long jvmStartTime;
+
+    private final String[] strings = new String[MAX_STRINGS];
+    private int stringCount = 0;
+
+    // total number of events recorded. the next event goes to slot (written % capacity)
+    private long written = 0;
+
+    private final Cursor cursor = new Cursor();
+
+    /**
+     * Creates a log for the memory pools of the running JVM
+     *
+     * @param capacity the maximum number of events to keep
+     */
+    public GCEventLog(int capacity) {
+        this(capacity, poolNames(ManagementFactory.getMemoryPoolMXBeans()),
+                ManagementFactory.getRuntimeMXBean().getStartTime());
+    }
+
+    /**
+     * @param capacity the maximum number of events to keep
+     * @param poolNames the memory pools to record
+     * @param jvmStartTime the system time the JVM has been started at. GC times are relative to this.
+     * @throws IllegalArgumentException if the capacity is not positive or the log would exceed 2GiB
+     */
+    public GCEventLog(int capacity, String[] poolNames, long jvmStartTime) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        int recordSize = HEADER + 16 * poolNames.length;
+        long size = (long) capacity * recordSize;
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("capacity too large: " + capacity + " events of " + recordSize
+                    + " bytes exceed the maximum buffer size of " + Integer.MAX_VALUE + " bytes");
+        this.capacity = capacity;
+        this.poolNames = poolNames.clone();
+        this.recordSize = recordSize;
+        this.buffer = ByteBuffer.allocateDirect((int) size);
+        this.jvmStartTime = jvmStartTime;
+    }
+
+    private static String[] poolNames(List<MemoryPoolMXBean> pools) {
+        String[] names = new String[pools.size()];
+        for (int i = 0; i < names.length; i++)
+            names[i] = pools.get(i).getName();
+        return names;
+    }
+
+    /**
+     * Records a GC event, overwriting the oldest one if the log is full
+     */
+    public synchronized void record(String collector, String action, String cause, GcInfo info) {
+        int base = (int) (written % capacity) * recordSize;
+        buffer.putLong(base, info.getId());
+        buffer.putLong(base + 8, jvmStartTime + info.getStartTime());
+        buffer.putLong(base + 16, jvmStartTime + info.getEndTime());
+        buffer.putLong(base + 24, info.getDuration());
+        buffer.putInt(base + 32, intern(collector));
+        buffer.putInt(base + 36, intern(action));
+        buffer.putInt(base + 40, intern(cause));
+        buffer.putInt(base + 44, 0);
+        Map<String, MemoryUsage> before = info.getMemoryUsageBeforeGc();
+        Map<String, MemoryUsage> after = info.getMemoryUsageAfterGc();
+        for (int p = 0; p < poolNames.length; p++) {
+            buffer.putLong(base + HEADER + p * 16, used(before.get(poolNames[p])));
+            buffer.putLong(base + HEADER + p * 16 + 8, used(after.get(poolNames[p])));
+        }
+        written++;
+    }
+
+    private static long used(MemoryUsage usage) {
+        return usage == null ? -1 : usage.getUsed();
+    }
+
+    /**
+     * @return the index of the string in the string table, or {@code -1} if the table is full
+     */
+    private int intern(String value) {
+        if (value == null)
+            return -1;
+        int index = indexOf(value);
+        if (index >= 0)
+            return index;
+        if (stringCount == MAX_STRINGS)
+            return -1;
+        strings[stringCount] = value;
+        return stringCount++;
+    }
+
+    private int indexOf(String value) {
+        for (int i = 0; i < stringCount; i++)
+            if (strings[i].equals(value))
+                return i;
+        return -1;
+    }
+
+    private String string(int index) {
+        return index < 0 ? UNKNOWN : strings[index];
+    }
+
+    /**
+     * @return the number of events currently held
+     */
+    public synchronized int size() {
+        return (int) Math.min(written, capacity);
+    }
+
+    /**
+     * @return the total number of events recorded, including the overwritten ones
+     */
+    public synchronized long getTotalCount() {
+        return written;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Visits all events held, oldest first
+     */
+    public void forEach(GCEventVisitor visitor) {
+        query(Long.MIN_VALUE, Long.MAX_VALUE, null, visitor);
+    }
+
+    /**
+     * Visits all events that started in the time range {@code [from, to)}
+     * and optionally have a given cause, oldest first.
+     *
+     * @param from the lower bound of the start time (inclusive)
+     * @param to the upper bound of the start time (exclusive)
+     * @param cause the cause to filter by, or {@code null} for all causes
+     * @param visitor the visitor to call for every matching event
+     * @return the number of events visited
+     */
+    public synchronized int query(long from, long to, String cause, GCEventVisitor visitor) {
+        int causeIndex = -1;
+        if (cause != null) {
+            causeIndex = indexOf(cause);
+            // a cause never recorded cannot match
+            if (causeIndex < 0)
+                return 0;
+        }
+        int visited = 0;
+        long first = Math.max(0, written - capacity);
+        for (long e = first; e < written; e++) {
+            int base = (int) (e % capacity) * recordSize;
+            long start = buffer.getLong(base + 8);
+            if (start < from || start >= to)
+                continue;
+            if (cause != null && buffer.getInt(base + 40) != causeIndex)
+                continue;
+            cursor.base = base;
+            visited++;
+            if (!visitor.visit(cursor))
+                break;
+        }
+        return visited;
+    }
+
+    /**
+     * flyweight view on a record
+     */
+    private final class Cursor implements GCEvent {
+
+        private int base;
+
+        @Override
+        public long getId() {
+            return buffer.getLong(base);
+        }
+
+        @Override
+        public long getStartTime() {
+            return buffer.getLong(base + 8);
+        }
+
+        @Override
+        public long getEndTime() {
+            return buffer.getLong(base + 16);
+        }
+
+        @Override
+        public long getDuration() {
+            return buffer.getLong(base + 24);
+        }
+
+        @Override
+        public String getCollector() {
+            return string(buffer.getInt(base + 32));
+        }
+
+        @Override
+        public String getAction() {
+            return string(buffer.getInt(base + 36));
+        }
+
+        @Override
+        public String getCause() {
+            return string(buffer.getInt(base + 40));
+        }
+
+        @Override
+        public int getPoolCount() {
+            return poolNames.length;
+        }
+
+        @Override
+        public String getPoolName(int pool) {
+            return poolNames[pool];
+        }
+
+        @Override
+        public long getUsageBefore(int pool) {
+            return buffer.getLong(base + HEADER + pool * 16);
+        }
+
+        @Override
+        public long getUsageAfter(int pool) {
+            return buffer.getLong(base + HEADER + pool * 16 + 8);
+        }
+    }
+
+}
@@ -0,0 +1,19 @@
+package ch.awae.appcheck.data;
+
+/**
+ * Callback for iterating over the events of a {@link GCEventLog}
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+public interface GCEventVisitor {
+
+    /**
+     * Called for every matching event, oldest first
+     *
+     * @param event the event. Only valid during this call.
+     * @return {@code true} to continue with the next event, {@code false} to stop
+     */
+    boolean visit(GCEvent event);
+
+}
@@ -11,7 +11,17 @@ import javax.management.openmbean.CompositeData;
 /**
  * Notification handler processing Garbage Collection notifications.
  *
- * GC notifications are used to collect data about memory usage.
+ * GC notifications are used to collect data about memory usage. The handler can
+ * be registered directly, processing the notifications on the JMX notification
+ * thread, or behind a {@link GCNotificationPipeline}.
+ *
+ * Young and mixed pauses are recorded as minor GC, full pauses as major GC. Every
+ * event is also recorded in the {@link GCBuckets statistics of its collector and action}.
+ * Concurrent cycles and the pauses inside them are only recorded there. Pauses are
+ * additionally recorded {@link GCCauseContainer per cause}.
+ *
+ * Every event is logged at debug level only. At info level, the events are
+ * summarized at most once per log interval.
  *
  * Source: http://stackoverflow.com/questions/2057792/garbage-collection-notification
  *
@@ -22,11 +32,30 @@ import javax.management.openmbean.CompositeData;
 class GCNotificationHandler implements NotificationListener {
 
     private final GCDataContainer minor, major;
+    private final GCBuckets buckets;
+    private final AllocationDataContainer allocation;
+    private final GCCauseContainer causes;
+    private final GCEventLog eventLog;
+    private final long logInterval;
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    GCNotificationHandler(GCDataContainer minor, GCDataContainer major) {
+    // events since the last summary
+    private long lastSummary = System.currentTimeMillis();
+    private int minorCount = 0, majorCount = 0, otherCount = 0;
+
+    /**
+     * @param logInterval the minimum time in milliseconds between two info summaries. 0 logs every event.
+     */
+    GCNotificationHandler(GCDataContainer minor, GCDataContainer major, GCBuckets buckets,
+                          AllocationDataContainer allocation, GCCauseContainer causes, GCEventLog eventLog,
+                          long logInterval) {
         this.minor = minor;
         this.major = major;
+        this.buckets = buckets;
+        this.allocation = allocation;
+        this.causes = causes;
+        this.eventLog = eventLog;
+        this.logInterval = logInterval;
     }
 
     /**
@@ -36,18 +65,56 @@ class GCNotificationHandler implements NotificationListener {
     public void handleNotification(Notification notification, Object handback) {
         if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
             // this is a GC notification
-            GarbageCollectionNotificationInfo gcInfo = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
-            logger.info("GC recorded: " + gcInfo.getGcAction()+" (" + gcInfo.getGcName() +"): " + gcInfo.getGcCause());
+            process(GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData()));
+        } else {
+            logger.warn("received unsupported notification of type " + notification.getType());
+        }
+    }
 
-            // feed GCInfo to correct container
-            if (gcInfo.getGcAction().contains("minor GC"))
+    /**
+     * Records a GC event. Must not be called concurrently.
+     */
+    void process(GarbageCollectionNotificationInfo gcInfo) {
+        if (logger.isDebugEnabled())
+            logger.debug("GC recorded: " + gcInfo.getGcAction() + " (" + gcInfo.getGcName() + "): " + gcInfo.getGcCause());
+
+        // keep the raw event
+        eventLog.record(gcInfo.getGcName(), gcInfo.getGcAction(), gcInfo.getGcCause(), gcInfo.getGcInfo());
+
+        // feed GCInfo to correct container
+        GCBucket bucket = buckets.get(gcInfo.getGcName(), gcInfo.getGcAction(), gcInfo.getGcCause());
+        switch (bucket.getKind()) {
+            case YOUNG:
+            case MIXED:
                 minor.handle(gcInfo.getGcInfo());
-            else
+                minorCount++;
+                break;
+            case FULL:
                 major.handle(gcInfo.getGcInfo());
-
-        } else {
-            logger.warn("received unsupported notification of type " + notification.getType());
+                majorCount++;
+                break;
+            default:
+                otherCount++;
         }
+        bucket.getContainer().handle(gcInfo.getGcInfo());
+        allocation.handle(gcInfo.getGcInfo(), bucket.getKind());
+        if (bucket.getKind().isPause())
+            causes.handle(gcInfo.getGcCause(), gcInfo.getGcInfo().getDuration());
+
+        summarize(gcInfo);
+    }
+
+    private void summarize(GarbageCollectionNotificationInfo last) {
+        long now = System.currentTimeMillis();
+        if (now - lastSummary < logInterval || !logger.isInfoEnabled())
+            return;
+        logger.info("GC recorded: " + minorCount + " minor, " + majorCount + " major, " + otherCount
+                + " concurrent in the last " + (now - lastSummary) + "ms. last: " + last.getGcAction()
+                + " (" + last.getGcName() + "): " + last.getGcCause());
+        minorCount = 0;
+        majorCount = 0;
+        otherCount = 0;
+        lastSummary = now;
     }
 
 }
@@ -0,0 +1,206 @@
+package ch.awae.appcheck.data;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous pipeline for GC notifications.
+ *
+ * The JMX notification thread only stores the raw notification data together with
+ * its arrival time into a preallocated ring and returns. Decoding, recording and
+ * logging are done by the {@link GCNotificationHandler} on a dedicated consumer thread.
+ *
+ * The ring has a single producer and a single consumer. The JVM delivers all GC
+ * notifications from one thread, the producer side is nevertheless serialized by
+ * an (uncontended) lock, so a foreign producer cannot corrupt the ring. When the
+ * ring is full, the notification is dropped and counted. Notifications that waited
+ * longer than the late threshold before being processed are counted as late.
+ * Drops and late events are logged at most once per log interval.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+@SuppressWarnings("restriction")
+public class GCNotificationPipeline implements NotificationListener {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final GCNotificationHandler handler;
+
+    private final CompositeData[] slots;
+    private final long[] arrivals;
+    private final int mask;
+    private final long lateThreshold;
+    private final long logInterval;
+
+    // producer and consumer positions. slot index is (position & mask)
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    private final Thread consumer;
+    private volatile boolean waiting = false;
+    private volatile boolean running = true;
+
+    private volatile long dropped = 0;
+    private volatile long late = 0;
+    private volatile long processed = 0;
+
+    // consumer only: counters as of the last report
+    private long reportedDropped = 0, reportedLate = 0;
+    private long lastReport;
+
+    /**
+     * Creates and starts a pipeline
+     *
+     * @param handler the handler processing the notifications
+     * @param capacity the number of notifications the ring can hold. Rounded up to a power of 2.
+     * @param lateThreshold the delay in milliseconds after which a notification counts as late
+     * @param logInterval the minimum time in milliseconds between two reports of dropped or late notifications
+     */
+    GCNotificationPipeline(GCNotificationHandler handler, int capacity, long lateThreshold, long logInterval) {
+        if (capacity < 1 || capacity > (1 << 30))
+            throw new IllegalArgumentException("invalid capacity: " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        this.handler = handler;
+        this.slots = new CompositeData[size];
+        this.arrivals = new long[size];
+        this.mask = size - 1;
+        this.lateThreshold = TimeUnit.MILLISECONDS.toNanos(lateThreshold);
+        this.logInterval = logInterval;
+        this.lastReport = System.currentTimeMillis();
+
+        consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "appcheck-gc-consumer");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Enqueues a notification. Called on the JMX notification thread.
+     */
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+            logger.warn("received unsupported notification of type " + notification.getType());
+            return;
+        }
+        offer((CompositeData) notification.getUserData(), System.nanoTime());
+    }
+
+    private synchronized void offer(CompositeData data, long arrival) {
+        long t = tail.get();
+        if (!running || t - head.get() > mask) {
+            dropped++;
+            return;
+        }
+        int slot = (int) (t & mask);
+        slots[slot] = data;
+        arrivals[slot] = arrival;
+        // volatile write followed by the volatile read of the flag: a consumer about to park sees the new tail
+        tail.set(t + 1);
+        if (waiting)
+            LockSupport.unpark(consumer);
+    }
+
+    private void consume() {
+        while (running) {
+            long h = head.get();
+            if (h == tail.get()) {
+                report();
+                waiting = true;
+                if (h == tail.get() && running)
+                    LockSupport.park(this);
+                waiting = false;
+                continue;
+            }
+            int slot = (int) (h & mask);
+            CompositeData data = slots[slot];
+            long arrival = arrivals[slot];
+            slots[slot] = null;
+            head.set(h + 1);
+
+            if (System.nanoTime() - arrival > lateThreshold)
+                late++;
+            try {
+                handler.process(GarbageCollectionNotificationInfo.from(data));
+            } catch (RuntimeException e) {
+                logger.warn("unable to process GC notification", e);
+            }
+            processed++;
+            report();
+        }
+    }
+
+    /**
+     * logs dropped and late notifications, at most once per log interval
+     */
+    private void report() {
+        long now = System.currentTimeMillis();
+        if (now - lastReport < logInterval)
+            return;
+        long d = dropped, l = late;
+        if (d == reportedDropped && l == reportedLate)
+            return;
+        logger.warn((d - reportedDropped) + " GC notifications dropped, " + (l - reportedLate)
+                + " processed late since the last report");
+        reportedDropped = d;
+        reportedLate = l;
+        lastReport = now;
+    }
+
+    /**
+     * Stops the consumer. Notifications still in the ring are discarded and
+     * notifications arriving afterwards are dropped.
+     */
+    public void close() {
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of notifications dropped because the ring was full
+     */
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * @return the number of notifications processed later than the late threshold after their arrival
+     */
+    public long getLateCount() {
+        return late;
+    }
+
+    /**
+     * @return the number of notifications processed
+     */
+    public long getProcessedCount() {
+        return processed;
+    }
+
+    /**
+     * @return the number of notifications waiting to be processed
+     */
+    public int getBacklog() {
+        return (int) (tail.get() - head.get());
+    }
+
+}
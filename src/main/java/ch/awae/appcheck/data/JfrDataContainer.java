@@ -0,0 +1,103 @@
+package ch.awae.appcheck.data;
+
+import ch.awae.appcheck.statistics.StatChannel;
+import ch.awae.appcheck.statistics.StatManager;
+import ch.awae.appcheck.statistics.StatSummary;
+
+import java.io.IOException;
+
+/**
+ * Data container holding GC and safepoint data recorded by JFR.
+ *
+ * All durations are recorded in milliseconds, with sub-millisecond precision.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ *
+ * @see JfrEventSource
+ */
+public class JfrDataContainer {
+
+    /**
+     * channel: sum of all pauses of a GC
+     */
+    public static final String GC_PAUSES = "gc.sumOfPauses";
+    /**
+     * channel: longest pause of a GC
+     */
+    public static final String GC_LONGEST_PAUSE = "gc.longestPause";
+    /**
+     * channel: duration of a single GC pause phase
+     */
+    public static final String GC_PHASE_PAUSE = "gc.phasePause";
+    /**
+     * channel: time to safepoint, i.e. the time until all threads reached the safepoint
+     */
+    public static final String SAFEPOINT_SYNC = "safepoint.sync";
+    /**
+     * channel: total duration of a safepoint, from the begin of the synchronization to its end
+     */
+    public static final String SAFEPOINT_TOTAL = "safepoint.total";
+    /**
+     * channel: heap usage after GC in bytes
+     */
+    public static final String HEAP_AFTER = "heap.after";
+
+    private final StatManager manager;
+    private final StatChannel gcPauses, gcLongestPause, gcPhasePause, safepointSync, safepointTotal, heapAfter;
+
+    /**
+     * @param name the name of the container. Used to name the statistics files if persistence is enabled.
+     */
+    public JfrDataContainer(String name) throws IOException {
+        manager = GCDataContainer.buildStatManager(name);
+        // the registration order must stay the same for persisted statistics
+        gcPauses = manager.register(GC_PAUSES);
+        gcLongestPause = manager.register(GC_LONGEST_PAUSE);
+        gcPhasePause = manager.register(GC_PHASE_PAUSE);
+        safepointSync = manager.register(SAFEPOINT_SYNC);
+        safepointTotal = manager.register(SAFEPOINT_TOTAL);
+        heapAfter = manager.register(HEAP_AFTER);
+    }
+
+    public StatSummary[][] getSummaries() {
+        return manager.getAllSummaries();
+    }
+
+    /**
+     * @return the handle of a channel, or {@code null} if there is no such channel
+     */
+    public StatChannel getChannel(String name) {
+        return manager.getChannel(name);
+    }
+
+    public String[] getPeriodTitle() {
+        return manager.getPeriodTitles();
+    }
+
+    void recordGarbageCollection(double sumOfPauses, double longestPause) {
+        manager.addValue(gcPauses, sumOfPauses);
+        manager.addValue(gcLongestPause, longestPause);
+    }
+
+    void recordPhasePause(double duration) {
+        manager.addValue(gcPhasePause, duration);
+    }
+
+    void recordSafepoint(double sync, double total) {
+        manager.addValue(safepointSync, sync);
+        manager.addValue(safepointTotal, total);
+    }
+
+    void recordHeapAfterGc(long used) {
+        manager.addValue(heapAfter, used);
+    }
+
+    /**
+     * Flushes the recorded statistics if persistence is enabled
+     */
+    public void close() {
+        manager.close();
+    }
+
+}
@@ -0,0 +1,216 @@
+package ch.awae.appcheck.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Data source streaming GC and safepoint events from a local JFR recording.
+ *
+ * The events are consumed from an in-process {@code jdk.jfr.consumer.RecordingStream}
+ * (Java 14 or later) and recorded into a {@link JfrDataContainer}. Since this project
+ * is built for Java 7, the stream is accessed by reflection and the event consumers are
+ * dynamic proxies of {@code java.util.function.Consumer}. The methods are resolved once,
+ * handling an event only costs a few reflective calls.
+ *
+ * The overhead is bounded: only the following events are enabled and the stream keeps
+ * at most the configured age and size of recorded data.
+ * <ul>
+ *     <li>{@code jdk.GarbageCollection}: sum of pauses and longest pause per GC</li>
+ *     <li>{@code jdk.GCPhasePause}: duration of every pause phase</li>
+ *     <li>{@code jdk.SafepointBegin}, {@code jdk.SafepointEnd}: time to safepoint and total safepoint duration</li>
+ *     <li>{@code jdk.GCHeapSummary}: heap usage after GC</li>
+ * </ul>
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+public class JfrEventSource {
+
+    private static final String STREAM = "jdk.jfr.consumer.RecordingStream";
+
+    private static final int GARBAGE_COLLECTION = 0, PHASE_PAUSE = 1, SAFEPOINT_BEGIN = 2, SAFEPOINT_END = 3,
+            HEAP_SUMMARY = 4;
+    private static final String[] EVENTS = {
+            "jdk.GarbageCollection", "jdk.GCPhasePause", "jdk.SafepointBegin", "jdk.SafepointEnd", "jdk.GCHeapSummary"
+    };
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final JfrDataContainer container;
+    private final Object stream;
+
+    // RecordedEvent
+    private final Method getLong, getString, getFieldDuration, getDuration, getStartTime, getEndTime;
+    // Duration and Instant
+    private final Method toNanos, getEpochSecond, getNano;
+
+    // pending safepoint, only accessed by the stream thread
+    private long safepointId = -1, safepointStart;
+    private double safepointSync;
+
+    private volatile long errors = 0;
+
+    /**
+     * @return true if the running JVM supports JFR event streaming
+     */
+    public static boolean isAvailable() {
+        try {
+            Class.forName(STREAM);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates and starts streaming
+     *
+     * @param container the container to record the events into
+     * @param maxAge the maximum age in milliseconds of the data kept by the stream
+     * @param maxSize the maximum size in bytes of the data kept by the stream
+     * @throws ReflectiveOperationException if JFR event streaming is not available
+     */
+    public JfrEventSource(JfrDataContainer container, long maxAge, long maxSize) throws ReflectiveOperationException {
+        this.container = container;
+
+        Class<?> event = Class.forName("jdk.jfr.consumer.RecordedEvent");
+        getLong = event.getMethod("getLong", String.class);
+        getString = event.getMethod("getString", String.class);
+        getFieldDuration = event.getMethod("getDuration", String.class);
+        getDuration = event.getMethod("getDuration");
+        getStartTime = event.getMethod("getStartTime");
+        getEndTime = event.getMethod("getEndTime");
+        Class<?> duration = Class.forName("java.time.Duration");
+        toNanos = duration.getMethod("toNanos");
+        Method ofMillis = duration.getMethod("ofMillis", long.class);
+        Class<?> instant = Class.forName("java.time.Instant");
+        getEpochSecond = instant.getMethod("getEpochSecond");
+        getNano = instant.getMethod("getNano");
+
+        Class<?> streamClass = Class.forName(STREAM);
+        Class<?> consumer = Class.forName("java.util.function.Consumer");
+        stream = streamClass.getConstructor().newInstance();
+        try {
+            Method enable = streamClass.getMethod("enable", String.class);
+            Method onEvent = streamClass.getMethod("onEvent", String.class, consumer);
+            for (int type = 0; type < EVENTS.length; type++) {
+                enable.invoke(stream, EVENTS[type]);
+                onEvent.invoke(stream, EVENTS[type], Proxy.newProxyInstance(consumer.getClassLoader(),
+                        new Class<?>[]{consumer}, new EventConsumer(type)));
+            }
+            streamClass.getMethod("setMaxAge", duration).invoke(stream, ofMillis.invoke(null, maxAge));
+            streamClass.getMethod("setMaxSize", long.class).invoke(stream, maxSize);
+            streamClass.getMethod("startAsync").invoke(stream);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            close();
+            throw e;
+        }
+        logger.info("streaming JFR events");
+    }
+
+    /**
+     * Stops streaming
+     */
+    public void close() {
+        try {
+            stream.getClass().getMethod("close").invoke(stream);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("unable to close the JFR stream", e);
+        }
+    }
+
+    /**
+     * @return the number of events that could not be processed
+     */
+    public long getErrorCount() {
+        return errors;
+    }
+
+    private void handle(int type, Object event) throws ReflectiveOperationException {
+        switch (type) {
+            case GARBAGE_COLLECTION:
+                container.recordGarbageCollection(millis(getFieldDuration.invoke(event, "sumOfPauses")),
+                        millis(getFieldDuration.invoke(event, "longestPause")));
+                break;
+            case PHASE_PAUSE:
+                container.recordPhasePause(millis(getDuration.invoke(event)));
+                break;
+            case SAFEPOINT_BEGIN:
+                safepointId = (Long) getLong.invoke(event, "safepointId");
+                safepointStart = nanos(getStartTime.invoke(event));
+                safepointSync = millis(getDuration.invoke(event));
+                break;
+            case SAFEPOINT_END:
+                // the end is only matched to the latest begin. safepoints do not overlap.
+                if ((Long) getLong.invoke(event, "safepointId") == safepointId) {
+                    container.recordSafepoint(safepointSync, (nanos(getEndTime.invoke(event)) - safepointStart) / 1e6);
+                    safepointId = -1;
+                }
+                break;
+            case HEAP_SUMMARY:
+                if ("After GC".equals(getString.invoke(event, "when")))
+                    container.recordHeapAfterGc((Long) getLong.invoke(event, "heapUsed"));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown event type: " + type);
+        }
+    }
+
+    private double millis(Object duration) throws ReflectiveOperationException {
+        return (Long) toNanos.invoke(duration) / 1e6;
+    }
+
+    private long nanos(Object instant) throws ReflectiveOperationException {
+        return (Long) getEpochSecond.invoke(instant) * 1000000000L + (Integer) getNano.invoke(instant);
+    }
+
+    /**
+     * {@code java.util.function.Consumer} of a single event type
+     */
+    private final class EventConsumer implements InvocationHandler {
+
+        private final int type;
+
+        EventConsumer(int type) {
+            this.type = type;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "JFR consumer for " + EVENTS[type];
+                case "accept":
+                    accept(args[0]);
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+
+        private void accept(Object event) {
+            try {
+                handle(type, event);
+            } catch (InvocationTargetException e) {
+                failed(e.getCause());
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                failed(e);
+            }
+        }
+
+        private void failed(Throwable e) {
+            // only log the first failure, a broken event type would otherwise flood the log
+            if (errors++ == 0)
+                logger.warn("unable to process JFR event " + EVENTS[type], e);
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+package ch.awae.appcheck.data;
+
+import java.lang.management.MemoryType;
+
+/**
+ * Collector-independent role of a memory pool.
+ *
+ * The role is derived from the type and name of the pool. This covers the pools of
+ * the Serial, Parallel, CMS, G1, Shenandoah and ZGC collectors as well as the permanent
+ * generation, Metaspace and both the single and the segmented code cache. A heap
+ * without generations (Shenandoah, non-generational ZGC, Epsilon) is treated as old generation.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+public enum MemoryPoolRole {
+
+    EDEN("Eden Space"),
+    SURVIVOR("Survivor Space"),
+    OLD("Old Gen"),
+    /**
+     * permanent generation (up to Java 7) or Metaspace
+     */
+    METASPACE("Perm Gen / Metaspace"),
+    /**
+     * compressed class space. Its usage is already part of the Metaspace usage.
+     */
+    CLASS_SPACE("Compressed Class Space"),
+    /**
+     * code cache or any segment of the segmented code cache
+     */
+    CODE("Code Cache");
+
+    private final String title;
+
+    MemoryPoolRole(String title) {
+        this.title = title;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Determines the role of a memory pool
+     *
+     * @param type the type of the pool
+     * @param name the name of the pool
+     * @return the role, or {@code null} for an unknown non-heap pool
+     */
+    public static MemoryPoolRole of(MemoryType type, String name) {
+        if (type == MemoryType.HEAP) {
+            if (name.contains("Eden") || name.contains("Young Generation"))
+                return EDEN;
+            if (name.contains("Survivor"))
+                return SURVIVOR;
+            // "Old Gen", "Tenured Gen", "Old Generation" and all heaps without generations
+            return OLD;
+        }
+        if (name.contains("Perm Gen") || name.equals("Metaspace"))
+            return METASPACE;
+        if (name.equals("Compressed Class Space"))
+            return CLASS_SPACE;
+        if (name.equals("Code Cache") || name.startsWith("CodeHeap"))
+            return CODE;
+        return null;
+    }
+
+}
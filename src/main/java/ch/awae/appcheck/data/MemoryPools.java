@@ -0,0 +1,142 @@
+package ch.awae.appcheck.data;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The memory pools of the running JVM, resolved to their {@link MemoryPoolRole roles}.
+ *
+ * The pools are discovered once. Usages reported per pool name (as in a GC notification)
+ * are summed up per role. To keep name lookups off the per-event path, the role is
+ * cached per position in the usage map: as long as the map returns the same name
+ * instances in the same order (which is the case for the maps of a GC notification),
+ * every pool is resolved by an identity comparison only.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+public final class MemoryPools {
+
+    private static final int ROLE_COUNT = MemoryPoolRole.values().length;
+
+    private final MemoryPoolMXBean[] pools;
+    private final String[] names;
+    private final MemoryPoolRole[] roles;
+
+    // role cache by position in a usage map
+    private String[] cachedNames = new String[0];
+    private MemoryPoolRole[] cachedRoles = new MemoryPoolRole[0];
+
+    /**
+     * discovers the pools of the running JVM
+     */
+    public MemoryPools() {
+        this(ManagementFactory.getMemoryPoolMXBeans());
+    }
+
+    public MemoryPools(List<MemoryPoolMXBean> pools) {
+        this.pools = pools.toArray(new MemoryPoolMXBean[pools.size()]);
+        names = new String[pools.size()];
+        roles = new MemoryPoolRole[pools.size()];
+        for (int i = 0; i < names.length; i++) {
+            MemoryPoolMXBean pool = pools.get(i);
+            names[i] = pool.getName();
+            roles[i] = MemoryPoolRole.of(pool.getType(), pool.getName());
+        }
+    }
+
+    public int getPoolCount() {
+        return names.length;
+    }
+
+    public String getName(int pool) {
+        return names[pool];
+    }
+
+    /**
+     * @return the role of a pool, or {@code null} if it is not known
+     */
+    public MemoryPoolRole getRole(int pool) {
+        return roles[pool];
+    }
+
+    /**
+     * @return true if the JVM has at least one pool with the given role
+     */
+    public boolean hasRole(MemoryPoolRole role) {
+        for (MemoryPoolRole r : roles)
+            if (r == role)
+                return true;
+        return false;
+    }
+
+    /**
+     * Sums up the usages per role. Pools of unknown roles are ignored.
+     *
+     * @param usages the usages by pool name
+     * @param used receives the used bytes per role (indexed by ordinal). Must have room for all roles.
+     * @param max receives the maximum size per role (indexed by ordinal), or -1 if not defined for any pool
+     *            of that role. May be {@code null}.
+     */
+    public synchronized void sum(Map<String, MemoryUsage> usages, long[] used, long[] max) {
+        for (int r = 0; r < ROLE_COUNT; r++) {
+            used[r] = 0;
+            if (max != null)
+                max[r] = -1;
+        }
+        if (cachedNames.length != usages.size()) {
+            cachedNames = new String[usages.size()];
+            cachedRoles = new MemoryPoolRole[usages.size()];
+        }
+        int position = 0;
+        for (Map.Entry<String, MemoryUsage> entry : usages.entrySet()) {
+            String name = entry.getKey();
+            if (cachedNames[position] != name) {
+                cachedNames[position] = name;
+                cachedRoles[position] = resolve(name);
+            }
+            MemoryPoolRole role = cachedRoles[position++];
+            MemoryUsage usage = entry.getValue();
+            if (role == null || usage == null)
+                continue;
+            used[role.ordinal()] += usage.getUsed();
+            if (max != null && usage.getMax() >= 0)
+                max[role.ordinal()] = Math.max(0, max[role.ordinal()]) + usage.getMax();
+        }
+    }
+
+    /**
+     * Sums up the current maximum sizes of the pools per role. Pools of unknown roles are ignored.
+     *
+     * @param max receives the maximum size per role (indexed by ordinal), or -1 if not defined for any pool
+     *            of that role. Must have room for all roles.
+     */
+    public void currentMax(long[] max) {
+        for (int r = 0; r < ROLE_COUNT; r++)
+            max[r] = -1;
+        for (int i = 0; i < pools.length; i++) {
+            MemoryUsage usage = pools[i].getUsage();
+            if (roles[i] == null || usage == null || usage.getMax() < 0)
+                continue;
+            max[roles[i].ordinal()] = Math.max(0, max[roles[i].ordinal()]) + usage.getMax();
+        }
+    }
+
+    /**
+     * @return an array with room for a value per role
+     */
+    public static long[] perRole() {
+        return new long[ROLE_COUNT];
+    }
+
+    private MemoryPoolRole resolve(String name) {
+        for (int i = 0; i < names.length; i++)
+            if (names[i].equals(name))
+                return roles[i];
+        return null;
+    }
+
+}
@@ -0,0 +1,242 @@
+package ch.awae.appcheck.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Push-based memory pool limits.
+ *
+ * A threshold is set on every pool with a defined maximum, at the configured fill ratio
+ * of its role (the stricter of the {@code check.gc.minor.max*} and {@code check.gc.major.max*}
+ * ratios). The JVM then notifies as soon as a pool crosses its threshold, no polling is involved.
+ * <ul>
+ *     <li>heap pools get a collection usage threshold, i.e. the usage after GC is compared.
+ *     The usage of a heap pool between collections says little about memory pressure.</li>
+ *     <li>non-heap pools (Metaspace, code cache) get a usage threshold, they are not collected regularly.</li>
+ * </ul>
+ *
+ * Every breach is recorded with its time and the usage of the pool. Breaches are only
+ * logged when the previous one was more than a minute ago.
+ *
+ * A usage threshold is only notified when the pool crosses it, not while the pool stays
+ * above it. Whether a pool is still above its usage threshold is read from the pool itself.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+public class MemoryThresholdMonitor implements NotificationListener {
+
+    /**
+     * breaches closer than this (in milliseconds) to the previous one are not logged
+     */
+    private static final long LOG_INTERVAL = 60000;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final List<Threshold> thresholds;
+
+    /**
+     * The threshold of a single memory pool and its breaches
+     */
+    public static final class Threshold {
+
+        private final MemoryPoolMXBean pool;
+        private final MemoryPoolRole role;
+        private final long threshold;
+        private final boolean collection;
+
+        private long breachCount = 0;
+        private long lastBreachTime = -1;
+        private long lastBreachUsage = -1;
+
+        Threshold(MemoryPoolMXBean pool, MemoryPoolRole role, long threshold, boolean collection) {
+            this.pool = pool;
+            this.role = role;
+            this.threshold = threshold;
+            this.collection = collection;
+        }
+
+        public String getPoolName() {
+            return pool.getName();
+        }
+
+        public MemoryPoolRole getRole() {
+            return role;
+        }
+
+        /**
+         * @return the threshold in bytes
+         */
+        public long getThreshold() {
+            return threshold;
+        }
+
+        /**
+         * @return true if the usage after GC is compared, false if the current usage is compared
+         */
+        public boolean isCollectionThreshold() {
+            return collection;
+        }
+
+        public synchronized long getBreachCount() {
+            return breachCount;
+        }
+
+        /**
+         * @return the system time of the latest breach, -1 if the threshold has never been breached
+         */
+        public synchronized long getLastBreachTime() {
+            return lastBreachTime;
+        }
+
+        /**
+         * @return the usage of the pool at the latest breach in bytes, -1 if the threshold has never been breached
+         */
+        public synchronized long getLastBreachUsage() {
+            return lastBreachUsage;
+        }
+
+        /**
+         * @return true if the pool is currently above its usage threshold. Always false for collection
+         *         thresholds, their breaches are notified after every GC anyway.
+         */
+        public boolean isExceeded() {
+            return !collection && pool.isUsageThresholdExceeded();
+        }
+
+        /**
+         * @return the time of the previous breach, -1 if there was none
+         */
+        synchronized long breach(long time, long usage) {
+            long previous = lastBreachTime;
+            breachCount++;
+            lastBreachTime = time;
+            lastBreachUsage = usage;
+            return previous;
+        }
+
+        void apply() {
+            if (collection)
+                pool.setCollectionUsageThreshold(threshold);
+            else
+                pool.setUsageThreshold(threshold);
+        }
+
+        void reset() {
+            if (collection)
+                pool.setCollectionUsageThreshold(0);
+            else
+                pool.setUsageThreshold(0);
+        }
+    }
+
+    /**
+     * Determines the thresholds of the pools of the running JVM
+     *
+     * @param properties the checker properties holding the fill ratios
+     */
+    public MemoryThresholdMonitor(Properties properties) {
+        List<Threshold> list = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryPoolRole role = MemoryPoolRole.of(pool.getType(), pool.getName());
+            String key = key(role);
+            long max = pool.getUsage() == null ? -1 : pool.getUsage().getMax();
+            if (key == null || max <= 0)
+                continue;
+            double ratio = Math.min(Double.parseDouble(properties.getProperty("check.gc.minor." + key)),
+                    Double.parseDouble(properties.getProperty("check.gc.major." + key)));
+            long threshold = (long) (ratio * max);
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported())
+                list.add(new Threshold(pool, role, threshold, true));
+            else if (pool.getType() == MemoryType.NON_HEAP && pool.isUsageThresholdSupported())
+                list.add(new Threshold(pool, role, threshold, false));
+        }
+        thresholds = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Sets the thresholds and starts listening for breaches
+     */
+    public void start() {
+        for (Threshold threshold : thresholds) {
+            threshold.apply();
+            logger.info("memory pool threshold of " + threshold.getPoolName() + " set to " + threshold.getThreshold() + " bytes");
+        }
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
+    }
+
+    /**
+     * Stops listening and clears the thresholds
+     */
+    public void stop() {
+        try {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(this);
+        } catch (ListenerNotFoundException e) {
+            logger.warn("memory threshold monitor was not registered");
+        }
+        for (Threshold threshold : thresholds)
+            threshold.reset();
+    }
+
+    /**
+     * @return the monitored thresholds
+     */
+    public List<Threshold> getThresholds() {
+        return thresholds;
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        String type = notification.getType();
+        boolean collection = type.equals(MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED);
+        if (!collection && !type.equals(MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED))
+            return;
+        MemoryNotificationInfo info = MemoryNotificationInfo.from((CompositeData) notification.getUserData());
+        for (Threshold threshold : thresholds) {
+            if (threshold.isCollectionThreshold() == collection && threshold.getPoolName().equals(info.getPoolName())) {
+                long previous = threshold.breach(notification.getTimeStamp(), info.getUsage().getUsed());
+                // a collection threshold is reported after every GC while exceeded. only log the start of a breach
+                if (previous < 0 || notification.getTimeStamp() - previous > LOG_INTERVAL)
+                    logger.warn("memory pool " + info.getPoolName() + " exceeded its threshold of "
+                        + threshold.getThreshold() + " bytes: " + info.getUsage().getUsed() + " bytes used");
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the suffix of the property holding the fill ratio of a role, or {@code null} if not configured
+     */
+    private static String key(MemoryPoolRole role) {
+        if (role == null)
+            return null;
+        switch (role) {
+            case EDEN:
+                return "maxEden";
+            case SURVIVOR:
+                return "maxSurvivor";
+            case OLD:
+                return "maxOld";
+            case METASPACE:
+                return "maxPerm";
+            case CODE:
+                return "maxCode";
+            default:
+                return null;
+        }
+    }
+
+}
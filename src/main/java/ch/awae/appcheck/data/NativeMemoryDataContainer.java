@@ -0,0 +1,269 @@
+package ch.awae.appcheck.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.awae.appcheck.statistics.StatChannel;
+import ch.awae.appcheck.statistics.StatManager;
+import ch.awae.appcheck.statistics.StatSummary;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Data container holding off-heap and native memory usage.
+ *
+ * The usage is sampled in a fixed interval on a background thread. Sources:
+ * <ul>
+ *     <li>buffer pools ({@code BufferPoolMXBean}): memory used by direct and mapped buffers</li>
+ *     <li>Metaspace and compressed class space: memory used</li>
+ *     <li>Native Memory Tracking, if the JVM runs with {@code -XX:NativeMemoryTracking=summary} (or
+ *     {@code detail}): committed memory in total and per category, read through the
+ *     {@code vmNativeMemory} operation of the DiagnosticCommand MBean</li>
+ * </ul>
+ *
+ * The NMT categories are registered as they appear in the NMT output. Their order is not
+ * fixed, so the statistics are never persisted.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+public class NativeMemoryDataContainer {
+
+    /**
+     * channel: used Metaspace in bytes
+     */
+    public static final String METASPACE = "metaspace";
+    /**
+     * channel: used compressed class space in bytes
+     */
+    public static final String CLASS_SPACE = "classSpace";
+    /**
+     * channel name prefix of the buffer pools, followed by the name of the pool (e.g. "buffer.direct")
+     */
+    public static final String BUFFER_PREFIX = "buffer.";
+    /**
+     * channel name prefix of the NMT categories, followed by the name of the category (e.g. "nmt.Thread")
+     */
+    public static final String NMT_PREFIX = "nmt.";
+    /**
+     * channel: total memory committed according to NMT in bytes
+     */
+    public static final String NMT_TOTAL = NMT_PREFIX + "Total";
+
+    private static final Pattern NMT_TOTAL_LINE = Pattern.compile("^Total: reserved=(\\d+)KB, committed=(\\d+)KB");
+    private static final Pattern NMT_CATEGORY_LINE = Pattern.compile("^-\\s*(.+?)\\s+\\(reserved=(\\d+)KB, committed=(\\d+)KB\\)");
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final StatManager manager;
+    private final long interval;
+
+    private final List<BufferPoolMXBean> bufferPools;
+    private final StatChannel[] bufferChannels;
+    private final List<MemoryPoolMXBean> metaspacePools = new ArrayList<>();
+    private final List<MemoryPoolMXBean> classSpacePools = new ArrayList<>();
+    private final StatChannel metaspace, classSpace;
+    private final List<StatChannel> nmtChannels = new CopyOnWriteArrayList<>();
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private final ObjectName diagnosticCommand;
+    private volatile boolean nmtEnabled;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param name the name of the container
+     * @param properties the checker properties
+     */
+    public NativeMemoryDataContainer(String name, Properties properties) throws IOException {
+        manager = GCDataContainer.buildStatManager(name, properties, false);
+        interval = Long.parseLong(properties.getProperty("check.native.sampleInterval", "10000"));
+
+        bufferPools = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class);
+        bufferChannels = new StatChannel[bufferPools.size()];
+        for (int i = 0; i < bufferChannels.length; i++)
+            bufferChannels[i] = manager.register(BUFFER_PREFIX + bufferPools.get(i).getName());
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryPoolRole role = MemoryPoolRole.of(pool.getType(), pool.getName());
+            if (role == MemoryPoolRole.METASPACE)
+                metaspacePools.add(pool);
+            else if (role == MemoryPoolRole.CLASS_SPACE)
+                classSpacePools.add(pool);
+        }
+        metaspace = manager.register(METASPACE);
+        classSpace = manager.register(CLASS_SPACE);
+
+        ObjectName dcmd = null;
+        try {
+            dcmd = new ObjectName("com.sun.management:type=DiagnosticCommand");
+            nmtEnabled = Boolean.parseBoolean(properties.getProperty("check.native.nmt.enabled", "true"))
+                    && server.isRegistered(dcmd) && nmtSummary(dcmd) != null;
+        } catch (JMException e) {
+            nmtEnabled = false;
+        }
+        diagnosticCommand = dcmd;
+        logger.info("native memory tracking " + (nmtEnabled ? "available" : "not available"));
+    }
+
+    /**
+     * Starts sampling in the background
+     */
+    public synchronized void start() {
+        if (executor != null)
+            return;
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "appcheck-native-memory");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sample();
+                } catch (RuntimeException e) {
+                    logger.warn("unable to sample native memory", e);
+                }
+            }
+        }, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops sampling
+     */
+    public synchronized void close() {
+        if (executor != null)
+            executor.shutdownNow();
+        executor = null;
+        manager.close();
+    }
+
+    /**
+     * Takes a sample of all sources
+     */
+    void sample() {
+        for (int i = 0; i < bufferChannels.length; i++)
+            manager.addValue(bufferChannels[i], bufferPools.get(i).getMemoryUsed());
+        manager.addValue(metaspace, used(metaspacePools));
+        manager.addValue(classSpace, used(classSpacePools));
+        if (nmtEnabled)
+            sampleNmt();
+    }
+
+    private void sampleNmt() {
+        String summary;
+        try {
+            summary = nmtSummary(diagnosticCommand);
+        } catch (JMException e) {
+            logger.warn("unable to read the native memory tracking summary, disabling it", e);
+            nmtEnabled = false;
+            return;
+        }
+        if (summary == null)
+            return;
+        for (String line : summary.split("\n")) {
+            Matcher total = NMT_TOTAL_LINE.matcher(line);
+            if (total.find()) {
+                manager.addValue(nmtChannel(NMT_TOTAL), Long.parseLong(total.group(2)) * 1024);
+                continue;
+            }
+            Matcher category = NMT_CATEGORY_LINE.matcher(line);
+            if (category.find())
+                manager.addValue(nmtChannel(NMT_PREFIX + category.group(1)), Long.parseLong(category.group(3)) * 1024);
+        }
+    }
+
+    private StatChannel nmtChannel(String name) {
+        StatChannel channel = manager.getChannel(name);
+        if (channel == null) {
+            channel = manager.register(name);
+            nmtChannels.add(channel);
+        }
+        return channel;
+    }
+
+    /**
+     * @return the NMT summary in KB, or {@code null} if NMT is not enabled
+     */
+    private String nmtSummary(ObjectName dcmd) throws JMException {
+        String result = (String) server.invoke(dcmd, "vmNativeMemory", new Object[]{new String[]{"summary", "scale=KB"}},
+                new String[]{String[].class.getName()});
+        if (result == null || !result.contains("Total:"))
+            return null;
+        return result;
+    }
+
+    private static long used(List<MemoryPoolMXBean> pools) {
+        long used = 0;
+        for (MemoryPoolMXBean pool : pools)
+            used += pool.getUsage().getUsed();
+        return used;
+    }
+
+    /**
+     * @return the maximum size of the compressed class space, -1 if undefined or not present
+     */
+    public long getClassSpaceMax() {
+        long max = 0;
+        for (MemoryPoolMXBean pool : classSpacePools) {
+            long poolMax = pool.getUsage().getMax();
+            if (poolMax < 0)
+                return -1;
+            max += poolMax;
+        }
+        return classSpacePools.isEmpty() ? -1 : max;
+    }
+
+    /**
+     * @return the channels of the buffer pools
+     */
+    public StatChannel[] getBufferChannels() {
+        return bufferChannels.clone();
+    }
+
+    /**
+     * @return the channels of the NMT categories in the order of their first occurrence, including the total
+     */
+    public List<StatChannel> getNmtChannels() {
+        return nmtChannels;
+    }
+
+    public boolean isNmtEnabled() {
+        return nmtEnabled;
+    }
+
+    /**
+     * @return the handle of a channel, or {@code null} if there is no such channel
+     */
+    public StatChannel getChannel(String name) {
+        return manager.getChannel(name);
+    }
+
+    public StatSummary[][] getSummaries() {
+        return manager.getAllSummaries();
+    }
+
+    public String[] getPeriodTitle() {
+        return manager.getPeriodTitles();
+    }
+
+}
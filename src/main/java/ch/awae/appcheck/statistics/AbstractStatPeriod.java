@@ -0,0 +1,194 @@
+package ch.awae.appcheck.statistics;
+
+/**
+ * Common base for all statistics periods.
+ *
+ * A period holds data for a limited amount of time in multiple frames
+ * and discards frames that are too old automatically. The concrete
+ * implementations differ in how concurrent writers are handled.
+ *
+ * Channels can be added at any time. A new channel starts out empty in all frames.
+ *
+ * Frames end at multiples of the frame time. The first frame starts when the period
+ * is created and is therefore usually shorter, it never covers time before the period
+ * existed.
+ *
+ * By default, frames are rotated whenever the period is accessed. If the period is
+ * rotated by a {@link FrameTicker} instead, rotation on access is disabled and all
+ * data points are added to the newest frame, regardless of their timestamp.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ *
+ * @see StatPeriod
+ * @see StripedStatPeriod
+ */
+public abstract class AbstractStatPeriod {
+
+    protected final long totalTime;
+    protected final long frameTime;
+    protected final int frameCount;
+    protected final String title;
+    protected final boolean isInfinite;
+    protected volatile int channelCount;
+    protected final HistogramLayout layout;
+    protected final StatClock clock;
+    protected volatile boolean rotateOnAccess = true;
+
+    protected AbstractStatPeriod(PeriodConfig config, int channelCount, HistogramLayout layout) {
+        this(config, channelCount, layout, StatClock.SYSTEM);
+    }
+
+    protected AbstractStatPeriod(PeriodConfig config, int channelCount, HistogramLayout layout, StatClock clock) {
+        this.channelCount = channelCount;
+        this.layout = layout;
+        this.clock = clock;
+        isInfinite = config.isInfinite();
+        if (isInfinite) {
+            totalTime = Long.MAX_VALUE;
+            frameTime = Long.MAX_VALUE;
+            frameCount = 1;
+        } else {
+            totalTime = config.getPeriodTime();
+            frameTime = config.getFrameTime();
+            frameCount = config.getFrameCount();
+        }
+        title = config.getTitle();
+    }
+
+    /**
+     * Adds a data point to all channels
+     *
+     * @param values the values for all channels. If there are less values than channels,
+     *               the remaining channels are left untouched.
+     * @param timestamp the system time of the data point
+     */
+    public abstract void addValues(double values[], long timestamp);
+
+    /**
+     * Adds a data point to a single channel
+     *
+     * @param channel the index of the channel
+     * @param value the value to add
+     * @param timestamp the system time of the data point
+     */
+    public abstract void addValue(int channel, double value, long timestamp);
+
+    /**
+     * Adds a new, empty channel
+     *
+     * @return the index of the new channel
+     */
+    public abstract int addChannel();
+
+    /**
+     * Adds a batch of data points to all channels.
+     *
+     * The values are given as a flat array of rows, one row per data point and
+     * one column per channel: the value of channel {@code c} in row {@code r} is
+     * at {@code values[r * channelCount + c]}. The timestamps should be ascending,
+     * a data point older than the current frame is added to the current frame.
+     *
+     * @param timestamps the system time of every row
+     * @param values the values of every row
+     * @param offset the index of the first row to add
+     * @param rows the number of rows to add
+     */
+    public abstract void addValues(long timestamps[], double values[], int offset, int rows);
+
+    /**
+     * Provides a summary for every channel over the whole period
+     *
+     * @return the summaries, indexed by channel
+     */
+    public StatSummary[] getSummary() {
+        return getSummary(clock.currentTimeMillis());
+    }
+
+    /**
+     * Provides a summary for every channel over the whole period as seen at the given time
+     *
+     * @param timestamp the current system time
+     * @return the summaries, indexed by channel
+     */
+    public abstract StatSummary[] getSummary(long timestamp);
+
+    /**
+     * Summarises the given channels over an arbitrary time range.
+     *
+     * Only the frames still held by the period are considered. The newest frame
+     * is considered to end now.
+     *
+     * @param from the start of the range (inclusive)
+     * @param to the end of the range (exclusive)
+     * @param channels the indices of the channels to summarise
+     * @return the summaries, in the order of the given channels
+     */
+    public RangeSummary[] query(long from, long to, int... channels) {
+        return query(from, to, channels, clock.currentTimeMillis());
+    }
+
+    /**
+     * Summarises the given channels over an arbitrary time range as seen at the given time
+     *
+     * @param timestamp the current system time
+     * @see #query(long, long, int...)
+     */
+    public abstract RangeSummary[] query(long from, long to, int[] channels, long timestamp);
+
+    public abstract int getEffectiveFrameCount();
+
+    public abstract long getEffectiveTime();
+
+    public int getChannelCount() {
+        return this.channelCount;
+    }
+
+    public long getConfiguredTime() {
+        return this.totalTime;
+    }
+
+    public int getConfiguredFrameCount() {
+        return this.frameCount;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public HistogramLayout getHistogramLayout() {
+        return layout;
+    }
+
+    public StatClock getClock() {
+        return clock;
+    }
+
+    /**
+     * @return the end of the frame starting at the given time, i.e. the next multiple of the frame time
+     */
+    static long frameEnd(long start, long frameTime) {
+        if (frameTime == Long.MAX_VALUE)
+            return Long.MAX_VALUE;
+        return start - start % frameTime + frameTime;
+    }
+
+    /**
+     * Enables or disables frame rotation on every access
+     */
+    void setRotateOnAccess(boolean rotateOnAccess) {
+        this.rotateOnAccess = rotateOnAccess;
+    }
+
+    /**
+     * Rotates the frames if the newest frame has expired at the given time.
+     * This is done regardless of {@link #setRotateOnAccess(boolean) rotation on access}.
+     */
+    abstract void tick(long timestamp);
+
+    /**
+     * @return the time the newest frame expires at, or {@link Long#MAX_VALUE} if it never does
+     */
+    abstract long getNextRotation();
+
+}
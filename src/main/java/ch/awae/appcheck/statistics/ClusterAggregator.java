@@ -0,0 +1,216 @@
+package ch.awae.appcheck.statistics;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Combines the encoded summaries of many nodes into cluster-wide summaries.
+ *
+ * The first node added defines the geometry (channels, periods and histogram layout).
+ * All further nodes must match it. Every node is merged directly from its encoding
+ * into primitive accumulators, no per-node objects are created. The merge follows
+ * the semantics of {@link StatFrame#merge(StatFrame, StatFrame)}: counts, sums and
+ * histograms are added, min and max are combined and the time span is widened.
+ * Empty summaries do not affect the time span.
+ *
+ * This class is not thread-safe.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ *
+ * @see SummaryCodec
+ */
+public class ClusterAggregator {
+
+    private int nodeCount = 0;
+
+    // geometry, defined by the first node
+    private int channelCount, periodCount;
+    private HistogramLayout layout;
+    private byte[][] titles;
+
+    // accumulators, indexed by [period * channelCount + channel]
+    private long[] starts, ends, counts;
+    private double[] sums, mins, maxs;
+    private long[][] histograms;
+
+    /**
+     * Merges the encoded summaries of a node
+     *
+     * @throws IllegalArgumentException if the encoding is malformed or does not match the geometry
+     *                                  of the nodes added before. The aggregator is left unchanged.
+     */
+    public void add(byte[] encoded) {
+        add(ByteBuffer.wrap(encoded));
+    }
+
+    /**
+     * Merges the encoded summaries of a node, starting at the current position of the buffer
+     *
+     * @throws IllegalArgumentException if the encoding is malformed or does not match the geometry
+     *                                  of the nodes added before. The aggregator is left unchanged.
+     */
+    public void add(ByteBuffer encoded) {
+        ByteBuffer in = encoded.duplicate();
+        // first pass validates, second pass merges. a bad node never leaves partial data behind.
+        readNode(in.duplicate(), false);
+        readNode(in, true);
+        encoded.position(in.position());
+        nodeCount++;
+    }
+
+    private void readNode(ByteBuffer in, boolean merge) {
+        try {
+            if (in.getInt() != SummaryCodec.MAGIC)
+                throw new IllegalArgumentException("not a summary encoding");
+            byte version = in.get();
+            if (version != SummaryCodec.VERSION)
+                throw new IllegalArgumentException("unsupported summary encoding version: " + version);
+            int channels = SummaryCodec.readVarInt(in);
+            int periods = SummaryCodec.readVarInt(in);
+            int octaves = SummaryCodec.readVarInt(in);
+            int subBuckets = SummaryCodec.readVarInt(in);
+            if (merge && layout == null)
+                init(channels, periods, new HistogramLayout(octaves, subBuckets));
+            if (layout != null && (channels != channelCount || periods != periodCount
+                    || octaves != layout.getOctaves() || subBuckets != layout.getSubBuckets()))
+                throw new IllegalArgumentException("summary geometry does not match the cluster");
+            int buckets = layout != null ? layout.getBucketCount() : new HistogramLayout(octaves, subBuckets).getBucketCount();
+
+            for (int p = 0; p < periods; p++) {
+                int length = SummaryCodec.readVarInt(in);
+                if (length > in.remaining())
+                    throw new IllegalArgumentException("truncated summary encoding");
+                if (merge && titles[p] == null) {
+                    titles[p] = new byte[length];
+                    in.get(titles[p]);
+                } else if (titles != null && titles[p] != null) {
+                    if (!sameBytes(in, titles[p], length))
+                        throw new IllegalArgumentException("period titles do not match the cluster");
+                } else {
+                    in.position(in.position() + length);
+                }
+                for (int c = 0; c < channels; c++)
+                    readFrame(in, p * channels + c, buckets, merge);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("truncated summary encoding", e);
+        }
+    }
+
+    private void readFrame(ByteBuffer in, int index, int buckets, boolean merge) {
+        long start = SummaryCodec.readVarLong(in);
+        long end = start + SummaryCodec.readVarLong(in);
+        long count = SummaryCodec.readVarLong(in);
+        if (count == 0) {
+            if (merge && counts[index] == 0 && starts[index] == 0) {
+                starts[index] = start;
+                ends[index] = end;
+            }
+            return;
+        }
+        double sum = in.getDouble();
+        double min = in.getDouble();
+        double max = in.getDouble();
+        int used = SummaryCodec.readVarInt(in);
+        if (used > buckets)
+            throw new IllegalArgumentException("too many histogram buckets in summary encoding");
+        int bucket = 0;
+        for (int i = 0; i < used; i++) {
+            bucket += SummaryCodec.readVarInt(in);
+            long n = SummaryCodec.readVarLong(in);
+            if (bucket >= buckets)
+                throw new IllegalArgumentException("histogram bucket out of range in summary encoding");
+            if (merge)
+                histograms[index][bucket] += n;
+        }
+        if (!merge)
+            return;
+        if (counts[index] == 0) {
+            starts[index] = start;
+            ends[index] = end;
+            mins[index] = min;
+            maxs[index] = max;
+        } else {
+            starts[index] = Math.min(starts[index], start);
+            ends[index] = Math.max(ends[index], end);
+            mins[index] = Math.min(mins[index], min);
+            maxs[index] = Math.max(maxs[index], max);
+        }
+        counts[index] += count;
+        sums[index] += sum;
+    }
+
+    private static boolean sameBytes(ByteBuffer in, byte[] expected, int length) {
+        if (length != expected.length) {
+            return false;
+        }
+        for (byte b : expected)
+            if (in.get() != b)
+                return false;
+        return true;
+    }
+
+    private void init(int channels, int periods, HistogramLayout layout) {
+        this.channelCount = channels;
+        this.periodCount = periods;
+        this.layout = layout;
+        this.titles = new byte[periods][];
+        int size = channels * periods;
+        starts = new long[size];
+        ends = new long[size];
+        counts = new long[size];
+        sums = new double[size];
+        mins = new double[size];
+        maxs = new double[size];
+        histograms = new long[size][layout.getBucketCount()];
+    }
+
+    /**
+     * @return the number of nodes merged so far
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public String[] getPeriodTitles() {
+        String[] res = new String[periodCount];
+        for (int p = 0; p < periodCount; p++)
+            res[p] = new String(titles[p], SummaryCodec.UTF_8);
+        return res;
+    }
+
+    /**
+     * returns 2D-Array of the cluster-wide summaries with the same sorting as
+     * {@link StatManager#getAllSummaries()}: first index is channel, second index is period
+     */
+    public StatSummary[][] getSummaries() {
+        String[] periodTitles = getPeriodTitles();
+        StatSummary[][] res = new StatSummary[channelCount][periodCount];
+        for (int p = 0; p < periodCount; p++) {
+            for (int c = 0; c < channelCount; c++) {
+                int i = p * channelCount + c;
+                long n = counts[i];
+                long[] histogram = Arrays.copyOf(histograms[i], histograms[i].length);
+                StatFrame frame = n == 0
+                        ? new StatFrame(starts[i], ends[i], 0, 0, 0, 0, layout, histogram)
+                        : new StatFrame(starts[i], ends[i], n, mins[i], sums[i] / n, maxs[i], layout, histogram);
+                res[c][p] = new SummaryWrapper(frame, periodTitles[p]);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Discards all merged nodes and the geometry
+     */
+    public void reset() {
+        nodeCount = 0;
+        layout = null;
+        titles = null;
+        channelCount = 0;
+        periodCount = 0;
+    }
+
+}
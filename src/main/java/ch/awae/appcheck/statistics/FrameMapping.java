@@ -0,0 +1,295 @@
+package ch.awae.appcheck.statistics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Memory-mapped file backing a {@link FrameStore}.
+ *
+ * The file has a fixed binary layout (all values big-endian):
+ * <pre>
+ *  header (64 bytes)
+ *     0  long   magic "APCKSTAT"
+ *     8  int    format version
+ *    12  int    state (0 = closed cleanly, 1 = open)
+ *    16  int    channel count
+ *    20  int    frame count
+ *    24  long   frame time
+ *    32  int    histogram octaves
+ *    36  int    histogram sub-buckets
+ *    40  int    head slot
+ *    44  int    used slot count
+ *    48  int    ingestion mode (ordinal of {@link IngestionMode})
+ *    52  int    reserved
+ *    56  long   CRC32 of bytes 0-11 and 16-55
+ *  frame start times: long[frameCount]
+ *  per channel:
+ *    count: long[frameCount], sum, min, max: double[frameCount]
+ *    histogram: long[frameCount * bucketCount]
+ * </pre>
+ *
+ * All writes are plain stores into the mapping, flushing is left to the operating system.
+ * The header checksum is updated whenever head or size change. On open, a file with a wrong
+ * magic number, version, geometry, ingestion mode or checksum is reinitialised. If the file has not been
+ * closed cleanly, every slot whose histogram does not add up to its count is treated as torn
+ * and cleared.
+ *
+ * Channels can be added later on. A file holding more channels than requested is accepted,
+ * the additional channels are restored as they are added again. Beyond that, the file is
+ * extended by one channel block, which is mapped anew.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+final class FrameMapping {
+
+    static final long MAGIC = 0x4150434B_53544154L; // "APCKSTAT"
+    static final int VERSION = 2;
+
+    private static final int HEADER = 64;
+    private static final int STATE_CLOSED = 0, STATE_OPEN = 1;
+
+    private final File file;
+    private MappedByteBuffer buffer;
+    private final int frameCount, buckets;
+    private final long channelBlock;
+    private final boolean attached;
+    // channels in use and channels held by the file
+    private int channelCount, fileChannels;
+
+    /**
+     * Opens or creates a mapping for the given geometry
+     *
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    FrameMapping(File file, IngestionMode mode, int channelCount, int frameCount, long frameTime, HistogramLayout layout)
+            throws IOException {
+        this.file = file;
+        this.channelCount = channelCount;
+        this.frameCount = frameCount;
+        this.buckets = layout.getBucketCount();
+        this.channelBlock = 4L * frameCount * 8 + (long) frameCount * buckets * 8;
+        this.fileChannels = channelCount;
+
+        long size;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() >= HEADER) {
+                // keep any additional channels of an earlier run
+                raf.seek(16);
+                int stored = raf.readInt();
+                if (stored > channelCount && raf.length() >= HEADER + frameCount * 8L + stored * channelBlock)
+                    fileChannels = stored;
+            }
+            size = fileSize(fileChannels);
+            if (raf.length() < size) {
+                // discard anything else and start with a zeroed file
+                raf.setLength(0);
+                raf.setLength(size);
+            }
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        boolean valid = buffer.getLong(0) == MAGIC
+                && buffer.getInt(8) == VERSION
+                && buffer.getInt(16) == fileChannels
+                && buffer.getInt(20) == frameCount
+                && buffer.getLong(24) == frameTime
+                && buffer.getInt(32) == layout.getOctaves()
+                && buffer.getInt(36) == layout.getSubBuckets()
+                && buffer.getInt(48) == mode.ordinal()
+                && buffer.getLong(56) == checksum();
+        int head = buffer.getInt(40);
+        int used = buffer.getInt(44);
+        valid = valid && head >= 0 && head < frameCount && used > 0 && used <= frameCount;
+
+        if (valid) {
+            if (buffer.getInt(12) != STATE_CLOSED)
+                repairTornSlots();
+            attached = true;
+        } else {
+            // (re)initialise
+            for (long i = HEADER; i < size; i += 8)
+                buffer.putLong((int) i, 0);
+            buffer.putLong(0, MAGIC);
+            buffer.putInt(8, VERSION);
+            buffer.putInt(16, fileChannels);
+            buffer.putInt(20, frameCount);
+            buffer.putLong(24, frameTime);
+            buffer.putInt(32, layout.getOctaves());
+            buffer.putInt(36, layout.getSubBuckets());
+            buffer.putInt(48, mode.ordinal());
+            buffer.putInt(52, 0);
+            putHeadAndSize(0, 1);
+            attached = false;
+        }
+        buffer.putInt(12, STATE_OPEN);
+    }
+
+    private long fileSize(int channels) {
+        long size = HEADER + frameCount * 8L + channels * channelBlock;
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("statistics file too large: " + size + " bytes");
+        return size;
+    }
+
+    /**
+     * Adds a channel to the mapping. The file is extended if it does not hold the channel yet.
+     *
+     * @return true if the channel holds previously recorded data
+     * @throws IOException if the file cannot be extended
+     */
+    boolean addChannel() throws IOException {
+        if (channelCount < fileChannels) {
+            channelCount++;
+            return attached;
+        }
+        long size = fileSize(fileChannels + 1);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(size);
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        // the file may have been longer before, so the new block is cleared explicitly
+        for (long i = channelBase(fileChannels); i < size; i += 8)
+            buffer.putLong((int) i, 0);
+        fileChannels++;
+        channelCount++;
+        buffer.putInt(16, fileChannels);
+        buffer.putLong(56, checksum());
+        return false;
+    }
+
+    /**
+     * @return true if the mapping holds previously recorded data
+     */
+    boolean isAttached() {
+        return attached;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    private long checksum() {
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < 12; i++)
+            crc.update(buffer.get(i));
+        for (int i = 16; i < 56; i++)
+            crc.update(buffer.get(i));
+        return crc.getValue();
+    }
+
+    private void repairTornSlots() {
+        for (int c = 0; c < fileChannels; c++) {
+            for (int slot = 0; slot < frameCount; slot++) {
+                long count = getCount(c, slot);
+                long total = 0;
+                for (int b = 0; b < buckets; b++)
+                    total += getHistogram(c, slot, b);
+                if (count != total || count < 0)
+                    clear(c, slot);
+            }
+        }
+    }
+
+    private void clear(int channel, int slot) {
+        putCount(channel, slot, 0);
+        putSum(channel, slot, 0);
+        putMin(channel, slot, 0);
+        putMax(channel, slot, 0);
+        for (int b = 0; b < buckets; b++)
+            putHistogram(channel, slot, b, 0);
+    }
+
+    /**
+     * Marks the file as closed cleanly and flushes it
+     */
+    void close() {
+        buffer.putInt(12, STATE_CLOSED);
+        buffer.force();
+    }
+
+    // HEADER
+
+    int getHead() {
+        return buffer.getInt(40);
+    }
+
+    int getSize() {
+        return buffer.getInt(44);
+    }
+
+    void putHeadAndSize(int head, int size) {
+        buffer.putInt(40, head);
+        buffer.putInt(44, size);
+        buffer.putLong(56, checksum());
+    }
+
+    // OFFSETS
+
+    private int channelBase(int channel) {
+        return (int) (HEADER + frameCount * 8L + channel * channelBlock);
+    }
+
+    private int columnOffset(int channel, int column, int slot) {
+        return channelBase(channel) + (column * frameCount + slot) * 8;
+    }
+
+    private int histogramOffset(int channel, int slot, int bucket) {
+        return channelBase(channel) + (4 * frameCount + slot * buckets + bucket) * 8;
+    }
+
+    // ACCESSORS
+
+    long getStart(int slot) {
+        return buffer.getLong(HEADER + slot * 8);
+    }
+
+    void putStart(int slot, long start) {
+        buffer.putLong(HEADER + slot * 8, start);
+    }
+
+    long getCount(int channel, int slot) {
+        return buffer.getLong(columnOffset(channel, 0, slot));
+    }
+
+    void putCount(int channel, int slot, long count) {
+        buffer.putLong(columnOffset(channel, 0, slot), count);
+    }
+
+    double getSum(int channel, int slot) {
+        return buffer.getDouble(columnOffset(channel, 1, slot));
+    }
+
+    void putSum(int channel, int slot, double sum) {
+        buffer.putDouble(columnOffset(channel, 1, slot), sum);
+    }
+
+    double getMin(int channel, int slot) {
+        return buffer.getDouble(columnOffset(channel, 2, slot));
+    }
+
+    void putMin(int channel, int slot, double min) {
+        buffer.putDouble(columnOffset(channel, 2, slot), min);
+    }
+
+    double getMax(int channel, int slot) {
+        return buffer.getDouble(columnOffset(channel, 3, slot));
+    }
+
+    void putMax(int channel, int slot, double max) {
+        buffer.putDouble(columnOffset(channel, 3, slot), max);
+    }
+
+    long getHistogram(int channel, int slot, int bucket) {
+        return buffer.getLong(histogramOffset(channel, slot, bucket));
+    }
+
+    void putHistogram(int channel, int slot, int bucket, long value) {
+        buffer.putLong(histogramOffset(channel, slot, bucket), value);
+    }
+
+}
@@ -0,0 +1,522 @@
+package ch.awae.appcheck.statistics;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Primitive ring buffer storage for the frames of a period.
+ *
+ * The frame data is held in struct-of-arrays form: one primitive column per
+ * attribute and channel, indexed by frame slot. All frames of a channel are
+ * therefore contiguous in memory. The histograms of a channel are stored in a
+ * single column as well, with one block of buckets per slot. The newest frame is
+ * located at the head index, older frames follow at decreasing indices (wrapping around).
+ *
+ * Rotation only moves the head index and clears the reused slots, no objects are
+ * allocated. If multiple frame times have passed, all skipped frames are cleared.
+ *
+ * Aggregates over the closed frames are maintained incrementally, so a summary
+ * never has to walk the frames. Count and histogram are exact integers and are
+ * simply added and subtracted. Sum, min and max use the two-stack scheme: the
+ * closed frames are split into an older front part with precomputed suffix
+ * aggregates and a newer back part with a running aggregate. When the front part
+ * runs empty, the suffix aggregates are rebuilt from all closed frames. This
+ * costs amortised O(1) per rotation and never accumulates rounding errors.
+ * Adding a closed frame to the histogram aggregate and removing it costs O(buckets).
+ *
+ * A summary does not depend on the number of frames, but it is not free either:
+ * count, sum, min and max are read in O(1), the histogram is copied and merged in
+ * O(buckets), and a new {@link StatFrame} with its histogram is allocated per channel.
+ *
+ * If a {@link FrameMapping} is provided, every change is written through into the
+ * mapped file as well. The heap columns stay the primary copy, the file is only read
+ * when the store is created or a channel is added.
+ *
+ * Channels can be added at any time. The per-channel columns are only extended, the
+ * columns of existing channels are kept as they are.
+ *
+ * This class is not thread-safe.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+final class FrameStore {
+
+    private final int frameCount;
+    private final long frameTime;
+    private int channelCount;
+
+    // per slot
+    private final long[] starts;
+    // per channel, per slot
+    private long[][] counts;
+    private double[][] sums, mins, maxs;
+    private long[][] histograms;
+    private final HistogramLayout layout;
+    private final int buckets;
+
+    // window aggregates over the closed frames (ages 1 to size - 1)
+    private long[] windowCounts;
+    private long[][] windowHistograms;
+    // two-stack aggregates: suffix aggregates of the front part (per channel, per slot)
+    private double[][] suffixSums, suffixMins, suffixMaxs;
+    // two-stack aggregates: running aggregates of the back part (per channel)
+    private double[] backSums, backMins, backMaxs;
+    // number of closed frames in the front part
+    private int frontSize = 0;
+
+    private final FrameMapping mapping;
+
+    private int head = 0;
+    private int size = 1;
+
+    FrameStore(int channelCount, int frameCount, long frameTime, long startTime, HistogramLayout layout) {
+        this(channelCount, frameCount, frameTime, startTime, layout, null);
+    }
+
+    /**
+     * @param mapping the file to write all changes through to. If it holds previously
+     *                recorded data, that data is loaded and the start time is ignored.
+     *                May be {@code null}.
+     */
+    FrameStore(int channelCount, int frameCount, long frameTime, long startTime, HistogramLayout layout,
+               FrameMapping mapping) {
+        this.channelCount = channelCount;
+        this.frameCount = frameCount;
+        this.frameTime = frameTime;
+        this.starts = new long[frameCount];
+        this.counts = new long[channelCount][frameCount];
+        this.sums = new double[channelCount][frameCount];
+        this.mins = new double[channelCount][frameCount];
+        this.maxs = new double[channelCount][frameCount];
+        this.layout = layout;
+        this.buckets = layout.getBucketCount();
+        this.histograms = new long[channelCount][frameCount * buckets];
+        this.windowCounts = new long[channelCount];
+        this.windowHistograms = new long[channelCount][buckets];
+        this.suffixSums = new double[channelCount][frameCount];
+        this.suffixMins = new double[channelCount][frameCount];
+        this.suffixMaxs = new double[channelCount][frameCount];
+        this.backSums = new double[channelCount];
+        this.backMins = new double[channelCount];
+        this.backMaxs = new double[channelCount];
+        Arrays.fill(backMins, Double.POSITIVE_INFINITY);
+        Arrays.fill(backMaxs, Double.NEGATIVE_INFINITY);
+        this.mapping = mapping;
+        if (mapping != null && mapping.isAttached()) {
+            load();
+        } else {
+            this.starts[0] = startTime;
+            if (mapping != null)
+                mapping.putStart(0, startTime);
+        }
+    }
+
+    /**
+     * reads all frames from the mapping and rebuilds the window aggregates
+     */
+    private void load() {
+        head = mapping.getHead();
+        size = mapping.getSize();
+        for (int slot = 0; slot < frameCount; slot++)
+            starts[slot] = mapping.getStart(slot);
+        for (int c = 0; c < channelCount; c++)
+            loadChannel(c);
+        rebuildWindow();
+    }
+
+    private void loadChannel(int c) {
+        for (int slot = 0; slot < frameCount; slot++) {
+            counts[c][slot] = mapping.getCount(c, slot);
+            sums[c][slot] = mapping.getSum(c, slot);
+            mins[c][slot] = mapping.getMin(c, slot);
+            maxs[c][slot] = mapping.getMax(c, slot);
+            for (int b = 0; b < buckets; b++)
+                histograms[c][slot * buckets + b] = mapping.getHistogram(c, slot, b);
+        }
+    }
+
+    /**
+     * recomputes the window aggregates of all channels from the closed frames
+     */
+    private void rebuildWindow() {
+        for (int c = 0; c < channelCount; c++) {
+            windowCounts[c] = 0;
+            Arrays.fill(windowHistograms[c], 0);
+        }
+        for (int age = size - 1; age > 0; age--)
+            push(slot(age));
+        flip();
+    }
+
+    /**
+     * Adds a new channel with empty frames.
+     *
+     * If the mapping still holds data for the channel, that data is loaded.
+     *
+     * @throws IllegalStateException if the mapped file cannot be extended
+     */
+    void addChannel() {
+        int c = channelCount;
+        counts = Arrays.copyOf(counts, c + 1);
+        counts[c] = new long[frameCount];
+        sums = Arrays.copyOf(sums, c + 1);
+        sums[c] = new double[frameCount];
+        mins = Arrays.copyOf(mins, c + 1);
+        mins[c] = new double[frameCount];
+        maxs = Arrays.copyOf(maxs, c + 1);
+        maxs[c] = new double[frameCount];
+        histograms = Arrays.copyOf(histograms, c + 1);
+        histograms[c] = new long[frameCount * buckets];
+        windowCounts = Arrays.copyOf(windowCounts, c + 1);
+        windowHistograms = Arrays.copyOf(windowHistograms, c + 1);
+        windowHistograms[c] = new long[buckets];
+        suffixSums = Arrays.copyOf(suffixSums, c + 1);
+        suffixSums[c] = new double[frameCount];
+        suffixMins = Arrays.copyOf(suffixMins, c + 1);
+        suffixMins[c] = new double[frameCount];
+        Arrays.fill(suffixMins[c], Double.POSITIVE_INFINITY);
+        suffixMaxs = Arrays.copyOf(suffixMaxs, c + 1);
+        suffixMaxs[c] = new double[frameCount];
+        Arrays.fill(suffixMaxs[c], Double.NEGATIVE_INFINITY);
+        backSums = Arrays.copyOf(backSums, c + 1);
+        backMins = Arrays.copyOf(backMins, c + 1);
+        backMins[c] = Double.POSITIVE_INFINITY;
+        backMaxs = Arrays.copyOf(backMaxs, c + 1);
+        backMaxs[c] = Double.NEGATIVE_INFINITY;
+        channelCount = c + 1;
+        if (mapping == null)
+            return;
+        boolean restored;
+        try {
+            restored = mapping.addChannel();
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to extend statistics file " + mapping.getFile(), e);
+        }
+        if (restored) {
+            loadChannel(c);
+            rebuildWindow();
+        }
+    }
+
+    /**
+     * Adds a value to the newest frame of a channel
+     */
+    void add(int channel, double value) {
+        long n = counts[channel][head];
+        if (n == 0) {
+            mins[channel][head] = value;
+            maxs[channel][head] = value;
+        } else {
+            if (mins[channel][head] > value)
+                mins[channel][head] = value;
+            if (maxs[channel][head] < value)
+                maxs[channel][head] = value;
+        }
+        sums[channel][head] += value;
+        int bucket = layout.bucketOf(value);
+        long hits = ++histograms[channel][head * buckets + bucket];
+        counts[channel][head] = n + 1;
+        if (mapping != null) {
+            mapping.putSum(channel, head, sums[channel][head]);
+            mapping.putMin(channel, head, mins[channel][head]);
+            mapping.putMax(channel, head, maxs[channel][head]);
+            mapping.putHistogram(channel, head, bucket, hits);
+            mapping.putCount(channel, head, n + 1);
+        }
+    }
+
+    /**
+     * Merges an already aggregated frame into the newest frame of a channel
+     */
+    void merge(int channel, StatFrame frame) {
+        long n = frame.getCount();
+        if (n == 0)
+            return;
+        if (counts[channel][head] == 0) {
+            mins[channel][head] = frame.getMin();
+            maxs[channel][head] = frame.getMax();
+        } else {
+            if (mins[channel][head] > frame.getMin())
+                mins[channel][head] = frame.getMin();
+            if (maxs[channel][head] < frame.getMax())
+                maxs[channel][head] = frame.getMax();
+        }
+        sums[channel][head] += frame.getAvg() * n;
+        counts[channel][head] += n;
+        long[] source = frame.getHistogram();
+        long[] target = histograms[channel];
+        for (int b = 0, offset = head * buckets; b < buckets; b++)
+            target[offset + b] += source[b];
+        if (mapping != null) {
+            mapping.putSum(channel, head, sums[channel][head]);
+            mapping.putMin(channel, head, mins[channel][head]);
+            mapping.putMax(channel, head, maxs[channel][head]);
+            for (int b = 0, offset = head * buckets; b < buckets; b++)
+                mapping.putHistogram(channel, head, b, target[offset + b]);
+            mapping.putCount(channel, head, counts[channel][head]);
+        }
+    }
+
+    /**
+     * @return true if the newest frame has expired at the given time
+     */
+    boolean isExpired(long timestamp) {
+        return AbstractStatPeriod.frameEnd(starts[head], frameTime) <= timestamp;
+    }
+
+    /**
+     * Moves the head forward if the newest frame has expired at the given time.
+     *
+     * @return the number of frames the head has been moved by
+     */
+    int rotate(long timestamp) {
+        long end = AbstractStatPeriod.frameEnd(starts[head], frameTime);
+        if (end > timestamp)
+            return 0;
+        // the newest frame may have started late, the following frames are aligned
+        long aligned = end - frameTime;
+        long expired = (timestamp - aligned) / frameTime;
+        // skipping more than a full ring clears all slots anyway
+        int steps = (int) Math.min(expired, frameCount);
+        long nextStart = aligned + (expired - steps) * frameTime;
+        for (int i = 0; i < steps; i++) {
+            if (frameCount > 1) {
+                // the oldest closed frame is dropped if its slot is reused
+                if (size == frameCount)
+                    pop(slot(size - 1));
+                push(head);
+            }
+            head = head + 1 == frameCount ? 0 : head + 1;
+            if (size < frameCount)
+                size++;
+            nextStart += frameTime;
+            clear(head, nextStart);
+        }
+        if (mapping != null)
+            mapping.putHeadAndSize(head, size);
+        return steps;
+    }
+
+    /**
+     * adds a closed frame to the back part of the window
+     */
+    private void push(int slot) {
+        for (int c = 0; c < channelCount; c++) {
+            long n = counts[c][slot];
+            if (n == 0)
+                continue;
+            windowCounts[c] += n;
+            long[] histogram = histograms[c];
+            long[] window = windowHistograms[c];
+            for (int b = 0, offset = slot * buckets; b < buckets; b++)
+                window[b] += histogram[offset + b];
+            backSums[c] += sums[c][slot];
+            backMins[c] = Math.min(backMins[c], mins[c][slot]);
+            backMaxs[c] = Math.max(backMaxs[c], maxs[c][slot]);
+        }
+    }
+
+    /**
+     * removes the oldest closed frame from the window
+     */
+    private void pop(int slot) {
+        if (frontSize == 0)
+            flip();
+        frontSize--;
+        for (int c = 0; c < channelCount; c++) {
+            long n = counts[c][slot];
+            if (n == 0)
+                continue;
+            windowCounts[c] -= n;
+            long[] histogram = histograms[c];
+            long[] window = windowHistograms[c];
+            for (int b = 0, offset = slot * buckets; b < buckets; b++)
+                window[b] -= histogram[offset + b];
+        }
+    }
+
+    /**
+     * moves all closed frames into the front part and rebuilds the suffix aggregates
+     */
+    private void flip() {
+        int closed = size - 1;
+        for (int c = 0; c < channelCount; c++) {
+            double sum = 0;
+            double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            // from the newest to the oldest closed frame
+            for (int age = 1; age <= closed; age++) {
+                int slot = slot(age);
+                if (counts[c][slot] != 0) {
+                    sum += sums[c][slot];
+                    min = Math.min(min, mins[c][slot]);
+                    max = Math.max(max, maxs[c][slot]);
+                }
+                suffixSums[c][slot] = sum;
+                suffixMins[c][slot] = min;
+                suffixMaxs[c][slot] = max;
+            }
+            backSums[c] = 0;
+            backMins[c] = Double.POSITIVE_INFINITY;
+            backMaxs[c] = Double.NEGATIVE_INFINITY;
+        }
+        frontSize = closed;
+    }
+
+    private void clear(int slot, long start) {
+        starts[slot] = start;
+        for (int c = 0; c < channelCount; c++) {
+            counts[c][slot] = 0;
+            sums[c][slot] = 0;
+            mins[c][slot] = 0;
+            maxs[c][slot] = 0;
+            Arrays.fill(histograms[c], slot * buckets, (slot + 1) * buckets, 0);
+        }
+        if (mapping != null) {
+            // the count goes first, so a torn slot is detected by its histogram
+            for (int c = 0; c < channelCount; c++) {
+                mapping.putCount(c, slot, 0);
+                mapping.putSum(c, slot, 0);
+                mapping.putMin(c, slot, 0);
+                mapping.putMax(c, slot, 0);
+                for (int b = 0; b < buckets; b++)
+                    mapping.putHistogram(c, slot, b, 0);
+            }
+            mapping.putStart(slot, start);
+        }
+    }
+
+    /**
+     * Summarises all frames of a channel into a single frame.
+     * The frame spans from the start of the oldest frame up to {@code endTime}.
+     *
+     * The summary is built from the window aggregates and the newest frame,
+     * so the cost does not depend on the number of frames. It is O(buckets)
+     * and allocates the returned frame and its histogram.
+     */
+    StatFrame summarize(int channel, long endTime) {
+        long n = windowCounts[channel] + counts[channel][head];
+        double s = backSums[channel];
+        double lo = backMins[channel], hi = backMaxs[channel];
+        if (frontSize > 0) {
+            int oldest = slot(size - 1);
+            s += suffixSums[channel][oldest];
+            lo = Math.min(lo, suffixMins[channel][oldest]);
+            hi = Math.max(hi, suffixMaxs[channel][oldest]);
+        }
+        if (counts[channel][head] != 0) {
+            s += sums[channel][head];
+            lo = Math.min(lo, mins[channel][head]);
+            hi = Math.max(hi, maxs[channel][head]);
+        }
+        long[] hist = Arrays.copyOfRange(histograms[channel], head * buckets, (head + 1) * buckets);
+        long[] window = windowHistograms[channel];
+        for (int b = 0; b < buckets; b++)
+            hist[b] += window[b];
+        if (n == 0)
+            return new StatFrame(getOldestStart(), endTime, 0, 0, 0, 0, layout, hist);
+        return new StatFrame(getOldestStart(), endTime, n, lo, s / n, hi, layout, hist);
+    }
+
+    /**
+     * Merges all frames of a channel overlapping the time range {@code [from, to)}.
+     * The newest frame is considered to span up to {@code endTime}.
+     *
+     * Only the overlapping frames are visited, starting with the newest one.
+     *
+     * @param head an additional frame to merge into the newest frame. May be {@code null}.
+     * @return the merged frame, spanning from the start of the oldest to the end of the newest frame
+     *         merged. If no frame overlaps the range, an empty frame starting and ending at {@code from}.
+     */
+    StatFrame mergeRange(int channel, long from, long to, long endTime, StatFrame head) {
+        long n = 0;
+        double s = 0;
+        double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY;
+        long[] hist = new long[buckets];
+        long first = Long.MAX_VALUE, last = Long.MIN_VALUE;
+        for (int age = 0; age < size; age++) {
+            int slot = slot(age);
+            long start = starts[slot];
+            long end = age == 0 ? endTime : AbstractStatPeriod.frameEnd(start, frameTime);
+            if (end <= from)
+                break;
+            if (start >= to)
+                continue;
+            first = Math.min(first, start);
+            last = Math.max(last, end);
+            long count = counts[channel][slot];
+            if (count != 0) {
+                n += count;
+                s += sums[channel][slot];
+                lo = Math.min(lo, mins[channel][slot]);
+                hi = Math.max(hi, maxs[channel][slot]);
+                long[] histogram = histograms[channel];
+                for (int b = 0, offset = slot * buckets; b < buckets; b++)
+                    hist[b] += histogram[offset + b];
+            }
+            if (age == 0 && head != null && head.getCount() != 0) {
+                n += head.getCount();
+                s += head.getAvg() * head.getCount();
+                lo = Math.min(lo, head.getMin());
+                hi = Math.max(hi, head.getMax());
+                long[] histogram = head.getHistogram();
+                for (int b = 0; b < buckets; b++)
+                    hist[b] += histogram[b];
+            }
+        }
+        if (first == Long.MAX_VALUE)
+            return new StatFrame(from, from, 0, 0, 0, 0, layout, hist);
+        if (n == 0)
+            return new StatFrame(first, last, 0, 0, 0, 0, layout, hist);
+        return new StatFrame(first, last, n, lo, s / n, hi, layout, hist);
+    }
+
+    /**
+     * Provides a single frame of a channel
+     *
+     * @param age the age of the frame. 0 is the newest frame.
+     * @param endTime the end time to assign to the frame
+     */
+    StatFrame frame(int channel, int age, long endTime) {
+        int slot = slot(age);
+        long n = counts[channel][slot];
+        long[] hist = Arrays.copyOfRange(histograms[channel], slot * buckets, (slot + 1) * buckets);
+        if (n == 0)
+            return new StatFrame(starts[slot], endTime, 0, 0, 0, 0, layout, hist);
+        return new StatFrame(starts[slot], endTime, n, mins[channel][slot], sums[channel][slot] / n,
+                maxs[channel][slot], layout, hist);
+    }
+
+    /**
+     * @param age the age of the frame. 0 is the newest frame.
+     * @return the slot index of the frame
+     */
+    int slot(int age) {
+        int slot = head - age;
+        return slot < 0 ? slot + frameCount : slot;
+    }
+
+    /**
+     * @return the number of frames currently in use
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param age the age of the frame. 0 is the newest frame.
+     * @return the start time of the frame
+     */
+    long getStart(int age) {
+        return starts[slot(age)];
+    }
+
+    long getOldestStart() {
+        return starts[slot(size - 1)];
+    }
+
+    long getHeadStart() {
+        return starts[head];
+    }
+
+}
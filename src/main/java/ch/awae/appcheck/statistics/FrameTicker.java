@@ -0,0 +1,115 @@
+package ch.awae.appcheck.statistics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background ticker rotating the frames of {@link StatManager StatManagers}.
+ *
+ * All managers share a single daemon thread. The thread is started when the first
+ * manager is registered and stopped when the last one is unregistered, so no thread
+ * (and no reference to the class loader) is left behind once all managers are closed.
+ * For every registered manager a tick is
+ * scheduled at the time the next frame of any of its periods ends. Since the
+ * frames end at multiples of their frame time, the ticks happen at wall-clock
+ * boundaries. After every tick the next one is scheduled anew,
+ * so the ticks do not drift.
+ *
+ * While a manager is registered, its periods do not rotate on access. Writing a
+ * data point is then a bare accumulation into the newest frame, and readers only
+ * ever see the frame set left by the last tick.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ *
+ * @see StatManager#startTicker()
+ */
+public final class FrameTicker {
+
+    private static final FrameTicker SHARED = new FrameTicker();
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Map<StatManager, ScheduledFuture<?>> tasks = new IdentityHashMap<>();
+    // null while no manager is registered
+    private ScheduledExecutorService executor;
+
+    private FrameTicker() {
+    }
+
+    /**
+     * @return the ticker shared by all managers
+     */
+    public static FrameTicker getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Starts ticking a manager. Does nothing if the manager is already registered.
+     */
+    synchronized void register(StatManager manager) {
+        if (tasks.containsKey(manager))
+            return;
+        if (executor == null)
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "appcheck-frame-ticker");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        schedule(manager);
+    }
+
+    /**
+     * Stops ticking a manager. A tick already running is completed.
+     * The thread is stopped once no manager is registered anymore.
+     */
+    synchronized void unregister(StatManager manager) {
+        ScheduledFuture<?> task = tasks.remove(manager);
+        if (task != null)
+            task.cancel(false);
+        if (tasks.isEmpty() && executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private synchronized void schedule(final StatManager manager) {
+        long next = manager.getNextRotation();
+        if (next == Long.MAX_VALUE) {
+            // only infinite periods: nothing to rotate, ever
+            tasks.put(manager, null);
+            return;
+        }
+        // at least 1ms, so a clock running slightly behind the scheduler does not cause a busy loop
+        long delay = Math.max(1, next - manager.getClock().currentTimeMillis());
+        tasks.put(manager, executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                tick(manager);
+            }
+        }, delay, TimeUnit.MILLISECONDS));
+    }
+
+    private void tick(StatManager manager) {
+        try {
+            manager.tick(manager.getClock().currentTimeMillis());
+        } catch (RuntimeException e) {
+            logger.warn("unable to rotate statistics frames", e);
+        }
+        synchronized (this) {
+            if (tasks.containsKey(manager))
+                schedule(manager);
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+package ch.awae.appcheck.statistics;
+
+/**
+ * Bucket layout of the log-bucketed histograms kept in every frame.
+ *
+ * Every power of 2 (octave) is split into a fixed number of linear sub-buckets.
+ * Bucket 0 collects all values below 1, the last bucket is a dedicated overflow
+ * bucket for all values above the highest octave. The bucket of a value is derived
+ * from the exponent and mantissa bits of its double representation, so no logarithm
+ * has to be computed.
+ *
+ * The memory of a histogram is bounded by {@link #getBucketCount()} longs. The
+ * relative error of a percentile estimate is bounded by {@code 1 / subBuckets}.
+ *
+ * Histograms with the same layout can be merged by simply adding their bucket arrays.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+public final class HistogramLayout {
+
+    /**
+     * 40 octaves (values up to 1TiB) with 4 sub-buckets each
+     */
+    public static final HistogramLayout DEFAULT = new HistogramLayout(40, 4);
+
+    private final int octaves;
+    private final int subBuckets;
+    private final int subBucketBits;
+    private final int bucketCount;
+
+    /**
+     * Creates a new histogram layout
+     *
+     * @param octaves the number of powers of 2 covered by the histogram (1 - 1023)
+     * @param subBuckets the number of buckets per octave. Must be a power of 2 (1 - 1024)
+     * @throws IllegalArgumentException if any parameter is out of range
+     */
+    public HistogramLayout(int octaves, int subBuckets) {
+        if (octaves < 1 || octaves > 1023)
+            throw new IllegalArgumentException("octave count out of range: " + octaves);
+        if (subBuckets < 1 || subBuckets > 1024 || Integer.bitCount(subBuckets) != 1)
+            throw new IllegalArgumentException("sub-bucket count must be a power of 2 up to 1024: " + subBuckets);
+        this.octaves = octaves;
+        this.subBuckets = subBuckets;
+        this.subBucketBits = Integer.numberOfTrailingZeros(subBuckets);
+        // underflow bucket, the octaves and the overflow bucket
+        this.bucketCount = 2 + octaves * subBuckets;
+    }
+
+    /**
+     * Parses a layout from a string of the form {@code "octaves,subBuckets"}
+     *
+     * @throws IllegalArgumentException if the string is not a valid layout
+     */
+    public static HistogramLayout parse(String value) {
+        String word[] = value.split(",");
+        if (word.length != 2)
+            throw new IllegalArgumentException("illegal histogram layout: " + value);
+        return new HistogramLayout(Integer.parseInt(word[0].trim()), Integer.parseInt(word[1].trim()));
+    }
+
+    public int getBucketCount() {
+        return bucketCount;
+    }
+
+    public int getOctaves() {
+        return octaves;
+    }
+
+    public int getSubBuckets() {
+        return subBuckets;
+    }
+
+    /**
+     * Determines the bucket a value belongs to
+     */
+    public int bucketOf(double value) {
+        if (!(value >= 1))
+            return 0;
+        int exponent = Math.getExponent(value);
+        if (exponent >= octaves)
+            return bucketCount - 1;
+        int sub = (int) ((Double.doubleToRawLongBits(value) >>> (52 - subBucketBits)) & (subBuckets - 1));
+        return 1 + (exponent << subBucketBits) + sub;
+    }
+
+    /**
+     * the smallest value contained in a bucket
+     */
+    public double lowerBound(int bucket) {
+        if (bucket == 0)
+            return 0;
+        int index = bucket - 1;
+        int exponent = index >> subBucketBits;
+        int sub = index & (subBuckets - 1);
+        return Math.scalb(1.0 + ((double) sub) / subBuckets, exponent);
+    }
+
+    /**
+     * the upper (exclusive) bound of a bucket
+     */
+    public double upperBound(int bucket) {
+        if (bucket == bucketCount - 1)
+            return Double.POSITIVE_INFINITY;
+        return lowerBound(bucket + 1);
+    }
+
+    /**
+     * Estimates a percentile from a histogram.
+     *
+     * The value is interpolated linearly inside the bucket holding the requested rank
+     * and clamped to the known minimum and maximum of the data.
+     *
+     * @param histogram the bucket counts
+     * @param total the total number of values in the histogram
+     * @param percentile the percentile in the range [0;1]
+     * @param min the smallest recorded value
+     * @param max the largest recorded value
+     * @return the estimated value, or {@code 0} if the histogram is empty
+     */
+    public double percentile(long[] histogram, long total, double percentile, double min, double max) {
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile * total));
+        long seen = 0;
+        for (int b = 0; b < bucketCount; b++) {
+            long n = histogram[b];
+            if (n == 0 || seen + n < rank) {
+                seen += n;
+                continue;
+            }
+            double lo = Math.max(lowerBound(b), min);
+            double hi = Math.min(upperBound(b), max);
+            double value = lo + (hi - lo) * (rank - seen) / n;
+            return Math.max(min, Math.min(max, value));
+        }
+        return max;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof HistogramLayout))
+            return false;
+        HistogramLayout other = (HistogramLayout) obj;
+        return other.octaves == octaves && other.subBuckets == subBuckets;
+    }
+
+    @Override
+    public int hashCode() {
+        return octaves * 31 + subBuckets;
+    }
+
+}
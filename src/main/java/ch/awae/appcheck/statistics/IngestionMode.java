@@ -0,0 +1,36 @@
+package ch.awae.appcheck.statistics;
+
+/**
+ * Determines how a {@link StatManager} handles concurrent writers.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+public enum IngestionMode {
+
+    /**
+     * All access to a period is synchronized. Readers and writers share a single monitor per period.
+     *
+     * @see StatPeriod
+     */
+    SYNCHRONIZED,
+
+    /**
+     * Writers accumulate into per-thread stripes without locking. The stripes are merged when read,
+     * so readers never block writers.
+     *
+     * @see StripedStatPeriod
+     */
+    STRIPED,
+
+    /**
+     * Like {@link #SYNCHRONIZED}, but data points are only written into the period with the shortest frames.
+     * The other periods are built from the closed frames of the next finer period, so the cost of a data
+     * point does not depend on the number of periods. The frame time of every period must be a multiple
+     * of the frame time of the next finer period.
+     *
+     * @see StatManager
+     */
+    ROLLUP
+
+}
@@ -0,0 +1,119 @@
+package ch.awae.appcheck.statistics;
+
+/**
+ * Streaming linear regression with exponential forgetting.
+ *
+ * Only the weighted sums of the samples are kept, so adding a sample and reading the
+ * fit are O(1) and do not allocate. The weight of a sample halves every half-life, so
+ * the fit follows the recent trend and old behaviour fades out. Times are kept relative
+ * to the first sample in seconds to preserve the precision of the sums.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+public final class LinearTrend {
+
+    private final double halfLife;
+
+    private long origin;
+    private long lastTime;
+    private long count = 0;
+    // weighted sums: weights, x, y, x*x, x*y
+    private double s0, sx, sy, sxx, sxy;
+
+    /**
+     * @param halfLife the time in milliseconds after which the weight of a sample has halved.
+     *                 {@code Long.MAX_VALUE} keeps all samples at full weight.
+     */
+    public LinearTrend(long halfLife) {
+        if (halfLife <= 0)
+            throw new IllegalArgumentException("half-life must be positive: " + halfLife);
+        this.halfLife = halfLife;
+    }
+
+    /**
+     * Adds a sample. Samples older than the latest one are weighted as if they were added at the latest time.
+     *
+     * @param time the time of the sample in milliseconds
+     * @param value the value of the sample
+     */
+    public synchronized void add(long time, double value) {
+        if (count == 0) {
+            origin = time;
+            lastTime = time;
+        } else if (time > lastTime) {
+            double decay = Math.pow(0.5, (time - lastTime) / halfLife);
+            s0 *= decay;
+            sx *= decay;
+            sy *= decay;
+            sxx *= decay;
+            sxy *= decay;
+            lastTime = time;
+        }
+        double x = (time - origin) / 1000.0;
+        s0 += 1;
+        sx += x;
+        sy += value;
+        sxx += x * x;
+        sxy += x * value;
+        count++;
+    }
+
+    /**
+     * @return the number of samples added
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the time of the latest sample
+     */
+    public synchronized long getLastTime() {
+        return lastTime;
+    }
+
+    /**
+     * @return the slope of the fit in value units per millisecond, or {@code NaN} if the samples do not span any time
+     */
+    public synchronized double getSlope() {
+        double denominator = s0 * sxx - sx * sx;
+        if (count < 2 || denominator <= 0)
+            return Double.NaN;
+        return (s0 * sxy - sx * sy) / denominator / 1000;
+    }
+
+    /**
+     * @return the fitted value at the given time, or {@code NaN} if there is no fit
+     */
+    public synchronized double estimate(long time) {
+        double slope = getSlope();
+        if (Double.isNaN(slope))
+            return Double.NaN;
+        // the fit passes through the weighted mean
+        double meanX = sx / s0;
+        double meanY = sy / s0;
+        return meanY + slope * ((time - origin) - meanX * 1000);
+    }
+
+    /**
+     * Projects the time at which the fit reaches a limit.
+     *
+     * @param now the time to project from
+     * @param limit the limit
+     * @return the milliseconds from {@code now} until the fit reaches the limit, 0 if it already has,
+     *         or {@code Long.MAX_VALUE} if the fit does not grow (or there is none)
+     */
+    public synchronized long timeUntil(long now, double limit) {
+        double slope = getSlope();
+        if (Double.isNaN(slope) || slope <= 0)
+            return Long.MAX_VALUE;
+        double remaining = (limit - estimate(now)) / slope;
+        if (remaining <= 0)
+            return 0;
+        if (remaining >= Long.MAX_VALUE)
+            return Long.MAX_VALUE;
+        return (long) remaining;
+    }
+
+}
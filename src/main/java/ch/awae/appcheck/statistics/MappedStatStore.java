@@ -0,0 +1,60 @@
+package ch.awae.appcheck.statistics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Persistent storage for the frames of a {@link StatManager}.
+ *
+ * Every period is backed by its own memory-mapped file in the store directory,
+ * named {@code <name>.<period index>.stats}. When a manager is created on an existing
+ * store, all periods reattach to their recorded frames directly. A file recorded with
+ * a different period configuration, histogram layout or ingestion mode is discarded.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ *
+ * @see FrameMapping
+ */
+public class MappedStatStore {
+
+    private final File directory;
+    private final String name;
+    private final List<FrameMapping> mappings = new ArrayList<>();
+
+    /**
+     * @param directory the directory holding the statistics files. It is created if required.
+     * @param name the name prefix of the statistics files
+     * @throws NullPointerException if any parameter is {@code null}
+     * @throws IllegalArgumentException if the directory cannot be created
+     */
+    public MappedStatStore(File directory, String name) {
+        this.directory = Objects.requireNonNull(directory, "directory may not be null");
+        this.name = Objects.requireNonNull(name, "name may not be null");
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IllegalArgumentException("unable to create statistics directory " + directory);
+    }
+
+    /**
+     * opens the mapping for a period
+     */
+    synchronized FrameMapping open(int index, IngestionMode mode, int channelCount, int frameCount, long frameTime,
+                                   HistogramLayout layout) throws IOException {
+        FrameMapping mapping = new FrameMapping(new File(directory, name + "." + index + ".stats"),
+                mode, channelCount, frameCount, frameTime, layout);
+        mappings.add(mapping);
+        return mapping;
+    }
+
+    /**
+     * Marks all files as closed cleanly and flushes them to disk
+     */
+    public synchronized void close() {
+        for (FrameMapping mapping : mappings)
+            mapping.close();
+    }
+
+}
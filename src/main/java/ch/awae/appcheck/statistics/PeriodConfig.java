@@ -1,5 +1,8 @@
 package ch.awae.appcheck.statistics;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Configuration Object for statistics periods
  *
@@ -38,6 +41,39 @@ public final class PeriodConfig {
         this.isInfinite = true;
     }
 
+    /**
+     * Parses a list of period configurations of the form
+     * {@code "title,periodTime,frameCount;...;infinite"}, as used for {@code check.gc.stats}
+     *
+     * @throws IllegalArgumentException if any part is not a valid configuration
+     */
+    public static PeriodConfig[] parseAll(String config) {
+        List<PeriodConfig> accumulator = new ArrayList<>();
+
+        for (String part : config.split(";")) {
+            try {
+                if (part.equals("infinite")) {
+                    accumulator.add(INFINITE);
+                    continue;
+                }
+                String word[] = part.split(",");
+                if (word.length != 3)
+                    throw new IllegalArgumentException("illegal format in string: " + part);
+                // word length is ok
+                String desc = word[0];
+                long duration = Long.parseLong(word[1]);
+                int frames = Integer.parseInt(word[2]);
+                // create config
+                accumulator.add(new PeriodConfig(duration, frames, desc));
+            }catch
+                    (RuntimeException e) {
+                throw new IllegalArgumentException("invalid period configuration string: " + part, e);
+            }
+        }
+
+        return accumulator.toArray(new PeriodConfig[0]);
+    }
+
     public boolean isInfinite() {
         return isInfinite;
     }
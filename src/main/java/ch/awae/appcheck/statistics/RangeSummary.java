@@ -0,0 +1,65 @@
+package ch.awae.appcheck.statistics;
+
+/**
+ * Summary of a channel over an arbitrary time range.
+ *
+ * The summary is merged from all frames overlapping the requested range.
+ * Frames cannot be split, so a frame reaching beyond the range is included
+ * entirely and counted as a partial frame. The start and end time of the
+ * summary are those of the frames merged, not those requested.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ *
+ * @see StatManager#query(long, long, StatChannel...)
+ */
+public class RangeSummary extends SummaryWrapper {
+
+    private final long requestedStart, requestedEnd;
+    private final int frameCount, partialFrameCount;
+
+    RangeSummary(StatFrame frame, String title, long requestedStart, long requestedEnd,
+                 int frameCount, int partialFrameCount) {
+        super(frame, title);
+        this.requestedStart = requestedStart;
+        this.requestedEnd = requestedEnd;
+        this.frameCount = frameCount;
+        this.partialFrameCount = partialFrameCount;
+    }
+
+    /**
+     * @return the start of the requested range (inclusive)
+     */
+    public long getRequestedStart() {
+        return requestedStart;
+    }
+
+    /**
+     * @return the end of the requested range (exclusive)
+     */
+    public long getRequestedEnd() {
+        return requestedEnd;
+    }
+
+    /**
+     * @return the number of frames merged into this summary
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return the number of merged frames only partially inside the requested range
+     */
+    public int getPartialFrameCount() {
+        return partialFrameCount;
+    }
+
+    /**
+     * @return true if the summary holds data from outside the requested range
+     */
+    public boolean isPartial() {
+        return partialFrameCount > 0;
+    }
+
+}
@@ -0,0 +1,122 @@
+package ch.awae.appcheck.statistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rate meter providing exponentially weighted moving averages over 1, 5 and 15 minutes.
+ *
+ * Marked amounts are collected in a counter and folded into the averages every
+ * {@value #TICK_INTERVAL} milliseconds. The averages are updated lazily by whichever
+ * thread first notices that a tick is due. If multiple ticks are due at once, the
+ * averages are decayed in a single step. Marking and reading are lock-free and
+ * do not allocate.
+ *
+ * All rates are given per second.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+public final class RateMeter {
+
+    /**
+     * tick interval in milliseconds
+     */
+    public static final long TICK_INTERVAL = 5000;
+
+    private static final double ALPHA_1 = alpha(1);
+    private static final double ALPHA_5 = alpha(5);
+    private static final double ALPHA_15 = alpha(15);
+
+    private final AtomicLong uncounted = new AtomicLong();
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong lastTick;
+    private final long startTime;
+    private final StatClock clock;
+
+    private volatile boolean initialised = false;
+    private volatile double rate1, rate5, rate15;
+
+    public RateMeter() {
+        this(StatClock.SYSTEM);
+    }
+
+    public RateMeter(StatClock clock) {
+        this.clock = clock;
+        this.startTime = clock.currentTimeMillis();
+        this.lastTick = new AtomicLong(startTime);
+    }
+
+    private static double alpha(int minutes) {
+        return 1 - Math.exp(-((double) TICK_INTERVAL) / (minutes * 60000));
+    }
+
+    /**
+     * Records an amount (e.g. 1 for a single event)
+     */
+    public void mark(long amount) {
+        tickIfNecessary();
+        uncounted.addAndGet(amount);
+        count.addAndGet(amount);
+    }
+
+    /**
+     * the total amount recorded
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    public double getOneMinuteRate() {
+        tickIfNecessary();
+        return rate1;
+    }
+
+    public double getFiveMinuteRate() {
+        tickIfNecessary();
+        return rate5;
+    }
+
+    public double getFifteenMinuteRate() {
+        tickIfNecessary();
+        return rate15;
+    }
+
+    /**
+     * the average rate since the creation of the meter
+     */
+    public double getMeanRate() {
+        long elapsed = clock.currentTimeMillis() - startTime;
+        if (elapsed <= 0)
+            return 0;
+        return count.get() * 1000.0 / elapsed;
+    }
+
+    private void tickIfNecessary() {
+        long old = lastTick.get();
+        long now = clock.currentTimeMillis();
+        long ticks = (now - old) / TICK_INTERVAL;
+        if (ticks <= 0)
+            return;
+        // only the thread winning the CAS updates the averages
+        if (!lastTick.compareAndSet(old, old + ticks * TICK_INTERVAL))
+            return;
+        double instant = uncounted.getAndSet(0) * 1000.0 / TICK_INTERVAL;
+        if (initialised) {
+            rate1 += ALPHA_1 * (instant - rate1);
+            rate5 += ALPHA_5 * (instant - rate5);
+            rate15 += ALPHA_15 * (instant - rate15);
+        } else {
+            rate1 = instant;
+            rate5 = instant;
+            rate15 = instant;
+            initialised = true;
+        }
+        // all further ticks had no data: decay in a single step
+        if (ticks > 1) {
+            rate1 *= Math.pow(1 - ALPHA_1, ticks - 1);
+            rate5 *= Math.pow(1 - ALPHA_5, ticks - 1);
+            rate15 *= Math.pow(1 - ALPHA_15, ticks - 1);
+        }
+    }
+
+}
@@ -0,0 +1,40 @@
+package ch.awae.appcheck.statistics;
+
+/**
+ * Handle of a named channel registered with a {@link StatManager}.
+ *
+ * The index of a channel never changes, so a handle can be kept and used
+ * for indexed writes and reads for the whole lifetime of the manager.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ *
+ * @see StatManager#register(String)
+ */
+public final class StatChannel {
+
+    private final String name;
+    private final int index;
+
+    StatChannel(String name, int index) {
+        this.name = name;
+        this.index = index;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the index of the channel in the rows and summaries of the manager
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return name + "#" + index;
+    }
+
+}
@@ -0,0 +1,30 @@
+package ch.awae.appcheck.statistics;
+
+/**
+ * Source of the current time for the statistics.
+ *
+ * All statistics classes read the time through a clock. Replacing the
+ * {@link #SYSTEM system clock} allows driving time deterministically,
+ * e.g. in tests or benchmarks.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+public interface StatClock {
+
+    /**
+     * clock based on {@link System#currentTimeMillis()}
+     */
+    StatClock SYSTEM = new StatClock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * @return the current time in milliseconds
+     */
+    long currentTimeMillis();
+
+}
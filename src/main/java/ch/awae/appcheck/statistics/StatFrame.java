@@ -4,6 +4,9 @@ package ch.awae.appcheck.statistics;
  * A single time frame in the statistics.
  * Frames can have new data added to and they can be merged with other frames.
  *
+ * Besides min, average and max every frame keeps a log-bucketed histogram
+ * of its values. It is used to estimate percentiles.
+ *
  * @author Andreas Wälchli
  * @version 1.1
  */
@@ -13,18 +16,32 @@ public final class StatFrame {
     private volatile long endTime = 0;
     private volatile long count;
     private volatile double min, avg, max;
+    private final HistogramLayout layout;
+    private final long[] histogram;
 
     /**
-     * Creates a new frame
+     * Creates a new frame with the {@link HistogramLayout#DEFAULT default} histogram layout
      *
      * @param startTime the system time the statistics start at
      */
     public StatFrame(final long startTime) {
+        this(startTime, HistogramLayout.DEFAULT);
+    }
+
+    /**
+     * Creates a new frame
+     *
+     * @param startTime the system time the statistics start at
+     * @param layout the layout of the histogram
+     */
+    public StatFrame(final long startTime, final HistogramLayout layout) {
         this.startTime = startTime;
         this.min = 0;
         this.max = 0;
         this.avg = 0;
         this.count = 0;
+        this.layout = layout;
+        this.histogram = new long[layout.getBucketCount()];
     }
 
     /**
@@ -37,10 +54,30 @@ public final class StatFrame {
         min = frame.min;
         max = frame.max;
         avg = frame.avg;
+        layout = frame.layout;
+        histogram = frame.histogram.clone();
+    }
+
+    /**
+     * Creates a frame from already aggregated values. The histogram array is not copied.
+     */
+    StatFrame(long startTime, long endTime, long count, double min, double avg, double max,
+              HistogramLayout layout, long[] histogram) {
+        assert histogram.length == layout.getBucketCount();
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.count = count;
+        this.min = min;
+        this.avg = avg;
+        this.max = max;
+        this.layout = layout;
+        this.histogram = histogram;
     }
 
     /**
      * Merges 2 frames into one
+     *
+     * @throws IllegalArgumentException if the frames have different histogram layouts
      */
     public static StatFrame merge(StatFrame f1, StatFrame f2) {
         if (f1.getCount() == 0)
@@ -56,6 +93,8 @@ public final class StatFrame {
      */
     private StatFrame(StatFrame f1, StatFrame f2) {
         assert f1.getCount() > 0 && f2.getCount() > 0;
+        if (!f1.layout.equals(f2.layout))
+            throw new IllegalArgumentException("cannot merge frames with different histogram layouts");
 
         this.startTime = Math.min(f1.startTime, f2.startTime);
         this.endTime = Math.max(f1.endTime, f2.endTime);
@@ -64,6 +103,18 @@ public final class StatFrame {
         this.max = Math.max(f1.max, f2.max);
         // calculate new average
         this.avg = ((f1.avg * f1.count) + (f2.avg * f2.count)) / (this.count);
+        // merge histograms
+        this.layout = f1.layout;
+        this.histogram = f1.histogram.clone();
+        for (int i = 0; i < histogram.length; i++)
+            this.histogram[i] += f2.histogram[i];
+    }
+
+    /**
+     * Creates a frame with the data of the given frame, but a different time span
+     */
+    StatFrame withTimes(long startTime, long endTime) {
+        return new StatFrame(startTime, endTime, count, min, avg, max, layout, histogram);
     }
 
     /**
@@ -88,6 +139,7 @@ public final class StatFrame {
             this.avg = ((this.avg * this.count) / (this.count + 1)) + (value / (this.count + 1));
             this.count++;
         }
+        this.histogram[layout.bucketOf(value)]++;
     }
 
     public void setEndTime(final long endTime) {
@@ -117,4 +169,24 @@ public final class StatFrame {
     public double getMax() {
         return max;
     }
+
+    /**
+     * Estimates a percentile of the values in this frame
+     *
+     * @param percentile the percentile in the range [0;1] (e.g. 0.99 for p99)
+     */
+    public synchronized double getPercentile(double percentile) {
+        return layout.percentile(histogram, count, percentile, min, max);
+    }
+
+    public HistogramLayout getHistogramLayout() {
+        return layout;
+    }
+
+    /**
+     * direct access to the histogram buckets. Must not be modified.
+     */
+    long[] getHistogram() {
+        return histogram;
+    }
 }
@@ -1,36 +1,271 @@
 package ch.awae.appcheck.statistics;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * root manager managing multiple parallel periods.
  * This allows for creation of multiple statistics
  * over different time periods.
  *
+ * In {@link IngestionMode#ROLLUP rollup mode} data points are only written into
+ * the period with the shortest frames. Every closed frame is folded into the period
+ * with the next longer frames and so on. The summary of a period is completed with
+ * the still open frames of all finer periods.
+ *
+ * If a {@link MappedStatStore} is provided, all frames are persisted and survive
+ * a restart of the JVM.
+ *
+ * All periods read the time from the same {@link StatClock}. The frames of every
+ * period end at multiples of its frame time. The first frames start when the manager
+ * is created, so all periods cover the same time until their first frame is dropped.
+ *
+ * Frames are rotated whenever a period is accessed. Alternatively, the manager can
+ * be {@link #startTicker() rotated} by the shared {@link FrameTicker}.
+ *
+ * Channels are either given as a fixed count on creation or registered by name
+ * at any time later on. Registering a channel adds it to all existing periods,
+ * it starts out empty. The returned {@link StatChannel} handle holds the index of
+ * the channel in the rows and summaries.
+ *
+ * Besides the summaries of the configured periods, arbitrary time ranges can be
+ * {@link #query(long, long, StatChannel...) queried}. The query is answered by the
+ * period with the finest frames still covering the start of the range.
+ *
  * @author Andreas Wälchli
  * @version 1.1
  */
 public class StatManager {
 
-    private int channelCount;
-    private StatPeriod periods[];
+    private final Object LOCK = new Object();
+
+    private volatile int channelCount;
+    private final Map<String, StatChannel> channels = new HashMap<>();
+    private AbstractStatPeriod periods[];
     private String periodTitles[];
+    // period indices ordered from finest to coarsest
+    private Integer resolution[];
+    // same as resolution, but only set in rollup mode
+    private Integer cascade[];
+    private MappedStatStore store;
+    private HistogramLayout layout;
+    private StatClock clock;
 
     public StatManager(int channelCount, PeriodConfig... configs) {
+        this(IngestionMode.SYNCHRONIZED, channelCount, configs);
+    }
+
+    public StatManager(IngestionMode mode, int channelCount, PeriodConfig... configs) {
+        this(mode, HistogramLayout.DEFAULT, channelCount, configs);
+    }
+
+    /**
+     * @throws IllegalArgumentException in rollup mode, if the frame time of a period is not
+     *                                  a multiple of the frame time of the next finer period
+     */
+    public StatManager(IngestionMode mode, HistogramLayout layout, int channelCount, PeriodConfig... configs) {
+        this(mode, layout, StatClock.SYSTEM, channelCount, configs);
+    }
+
+    /**
+     * @throws IllegalArgumentException in rollup mode, if the frame time of a period is not
+     *                                  a multiple of the frame time of the next finer period
+     */
+    public StatManager(IngestionMode mode, HistogramLayout layout, StatClock clock, int channelCount,
+                       PeriodConfig... configs) {
+        this.channelCount = channelCount;
+        this.layout = layout;
+        this.clock = clock;
+        long timestamp = clock.currentTimeMillis();
+        periods = new AbstractStatPeriod[configs.length];
+        for (int i = 0; i < configs.length; i++) {
+            switch (mode) {
+                case STRIPED:
+                    periods[i] = new StripedStatPeriod(configs[i], channelCount, timestamp, layout, clock);
+                    break;
+                default:
+                    periods[i] = new StatPeriod(configs[i], channelCount, timestamp, layout, clock);
+            }
+        }
+        init(mode);
+    }
+
+    /**
+     * Creates a manager persisting its frames in the given store
+     *
+     * @throws IllegalArgumentException if the store is used with the striped ingestion mode or in
+     *                                  rollup mode, if the frame time of a period is not a multiple
+     *                                  of the frame time of the next finer period
+     * @throws IOException if a statistics file cannot be opened
+     */
+    public StatManager(IngestionMode mode, HistogramLayout layout, MappedStatStore store, int channelCount,
+                       PeriodConfig... configs) throws IOException {
+        this(mode, layout, StatClock.SYSTEM, store, channelCount, configs);
+    }
+
+    /**
+     * Creates a manager persisting its frames in the given store
+     *
+     * @throws IllegalArgumentException if the store is used with the striped ingestion mode or in
+     *                                  rollup mode, if the frame time of a period is not a multiple
+     *                                  of the frame time of the next finer period
+     * @throws IOException if a statistics file cannot be opened
+     */
+    public StatManager(IngestionMode mode, HistogramLayout layout, StatClock clock, MappedStatStore store,
+                       int channelCount, PeriodConfig... configs) throws IOException {
+        if (mode == IngestionMode.STRIPED)
+            throw new IllegalArgumentException("persistent statistics are not supported in striped mode");
         this.channelCount = channelCount;
-        long timestamp = System.currentTimeMillis();
-        periods = new StatPeriod[configs.length];
-        periodTitles = new String[configs.length];
+        this.store = store;
+        this.layout = layout;
+        this.clock = clock;
+        long timestamp = clock.currentTimeMillis();
+        periods = new AbstractStatPeriod[configs.length];
         for (int i = 0; i < configs.length; i++) {
-            periods[i] = new StatPeriod(configs[i], channelCount, timestamp);
+            periods[i] = new StatPeriod(configs[i], channelCount, timestamp, layout, clock, store, i, mode);
+        }
+        init(mode);
+    }
+
+    private void init(IngestionMode mode) {
+        periodTitles = new String[periods.length];
+        for (int i = 0; i < periods.length; i++)
             periodTitles[i] = periods[i].getTitle();
+        sortByResolution();
+        if (mode == IngestionMode.ROLLUP && periods.length > 0)
+            buildCascade();
+    }
+
+    /**
+     * orders the periods by frame time
+     */
+    private void sortByResolution() {
+        resolution = new Integer[periods.length];
+        for (int i = 0; i < resolution.length; i++)
+            resolution[i] = i;
+        Arrays.sort(resolution, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                long ta = periods[a].frameTime;
+                long tb = periods[b].frameTime;
+                return ta < tb ? -1 : (ta == tb ? 0 : 1);
+            }
+        });
+    }
+
+    /**
+     * links every period to the next coarser one
+     */
+    private void buildCascade() {
+        cascade = resolution;
+        for (int i = 1; i < cascade.length; i++) {
+            AbstractStatPeriod fine = periods[cascade[i - 1]];
+            AbstractStatPeriod coarse = periods[cascade[i]];
+            if (!coarse.isInfinite && coarse.frameTime % fine.frameTime != 0)
+                throw new IllegalArgumentException("rollup requires the frame time of '" + coarse.getTitle()
+                        + "' to be a multiple of the frame time of '" + fine.getTitle() + "'");
+            ((StatPeriod) fine).setRollupTarget((StatPeriod) coarse);
         }
     }
 
     public void addDataPoint(double... values) {
-        long timestamp = System.currentTimeMillis();
-        for (StatPeriod period : periods)
+        long timestamp = clock.currentTimeMillis();
+        if (cascade != null) {
+            synchronized (LOCK) {
+                periods[cascade[0]].addValues(values, timestamp);
+            }
+            return;
+        }
+        for (AbstractStatPeriod period : periods)
             period.addValues(values, timestamp);
     }
 
+    /**
+     * Adds a data point to a single channel
+     */
+    public void addValue(StatChannel channel, double value) {
+        long timestamp = clock.currentTimeMillis();
+        int index = channel.getIndex();
+        if (cascade != null) {
+            synchronized (LOCK) {
+                periods[cascade[0]].addValue(index, value, timestamp);
+            }
+            return;
+        }
+        for (AbstractStatPeriod period : periods)
+            period.addValue(index, value, timestamp);
+    }
+
+    /**
+     * Registers a named channel. If a channel with that name already exists, its handle is returned.
+     *
+     * If the manager is persisted, channels are identified by their index only. The channels
+     * must therefore be registered in the same order on every start to restore their data.
+     *
+     * @param name the name of the channel
+     * @return the handle of the channel
+     * @throws IllegalStateException if a statistics file cannot be extended
+     */
+    public StatChannel register(String name) {
+        if (name == null)
+            throw new NullPointerException("name may not be null");
+        synchronized (LOCK) {
+            StatChannel channel = channels.get(name);
+            if (channel != null)
+                return channel;
+            for (AbstractStatPeriod period : periods)
+                period.addChannel();
+            channel = new StatChannel(name, channelCount);
+            channels.put(name, channel);
+            channelCount++;
+            return channel;
+        }
+    }
+
+    /**
+     * @return the handle of the channel with the given name, or {@code null} if it is not registered
+     */
+    public StatChannel getChannel(String name) {
+        synchronized (LOCK) {
+            return channels.get(name);
+        }
+    }
+
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    /**
+     * Adds a batch of timestamped data points.
+     *
+     * The values are given as a flat array of rows, one row per data point and
+     * one column per channel: the value of channel {@code c} in row {@code r} is
+     * at {@code values[r * channelCount + c]}. The timestamps should be ascending.
+     *
+     * @param timestamps the system time of every row
+     * @param values the values of every row
+     * @param offset the index of the first row to add
+     * @param rows the number of rows to add
+     * @throws IllegalArgumentException if the arrays are too short for the given rows
+     */
+    public void addDataPoints(long[] timestamps, double[] values, int offset, int rows) {
+        if (offset < 0 || rows < 0 || timestamps.length < offset + rows
+                || values.length < (long) (offset + rows) * channelCount)
+            throw new IllegalArgumentException("batch of " + rows + " rows at offset " + offset
+                    + " exceeds the arrays provided");
+        if (cascade != null) {
+            synchronized (LOCK) {
+                periods[cascade[0]].addValues(timestamps, values, offset, rows);
+            }
+            return;
+        }
+        for (AbstractStatPeriod period : periods)
+            period.addValues(timestamps, values, offset, rows);
+    }
+
     /**
      * returns 2D-Array of all summaries.
      *
@@ -42,22 +277,185 @@ public class StatManager {
      * @return the summaries
      */
     public StatSummary[][] getAllSummaries() {
-        StatSummary[][] summaries = new StatSummary[channelCount][periods.length];
+        // all periods are read at the same time
+        long timestamp = clock.currentTimeMillis();
+        // no channel may be registered while the periods are read
+        synchronized (LOCK) {
+            StatSummary[][] summaries = new StatSummary[channelCount][periods.length];
 
-        // iterate over all periods
-        for (int p = 0; p < periods.length; p++) {
-            StatSummary[] sum = periods[p].getSummary();
-            // fill values into array
-            for (int i = 0; i < channelCount; i++) {
-                summaries[i][p] = sum[i];
+            if (cascade != null) {
+                fillRollupSummaries(summaries, timestamp);
+                return summaries;
             }
+
+            // iterate over all periods
+            for (int p = 0; p < periods.length; p++) {
+                StatSummary[] sum = periods[p].getSummary(timestamp);
+                // fill values into array
+                for (int i = 0; i < channelCount; i++) {
+                    summaries[i][p] = sum[i];
+                }
+            }
+
+            return summaries;
         }
+    }
 
-        return summaries;
+    /**
+     * Summarises the given channels over the time range {@code [from, to)}.
+     *
+     * The range is answered by the period with the finest frames that still holds the
+     * start of the range. If no period reaches back that far, the period reaching back
+     * furthest is used. Frames overlapping the range only partially are included and
+     * {@link RangeSummary#isPartial() marked} in the result.
+     *
+     * @param from the start of the range (inclusive)
+     * @param to the end of the range (exclusive)
+     * @param channels the channels to summarise
+     * @return the summaries, in the order of the given channels
+     * @throws IllegalArgumentException if the range is empty
+     */
+    public RangeSummary[] query(long from, long to, StatChannel... channels) {
+        int[] indices = new int[channels.length];
+        for (int i = 0; i < channels.length; i++)
+            indices[i] = channels[i].getIndex();
+        return query(from, to, indices);
+    }
+
+    /**
+     * Summarises the channels with the given indices over the time range {@code [from, to)}
+     *
+     * @see #query(long, long, StatChannel...)
+     */
+    public RangeSummary[] query(long from, long to, int... channels) {
+        if (from >= to)
+            throw new IllegalArgumentException("empty time range: [" + from + ", " + to + ")");
+        if (periods.length == 0)
+            throw new IllegalStateException("no periods configured");
+        long timestamp = clock.currentTimeMillis();
+        synchronized (LOCK) {
+            for (int channel : channels)
+                if (channel < 0 || channel >= channelCount)
+                    throw new IndexOutOfBoundsException("no such channel: " + channel);
+            // finest period holding the start of the range
+            int selected = -1;
+            long furthest = Long.MAX_VALUE;
+            for (int i = 0; i < resolution.length; i++) {
+                long oldest = periods[resolution[i]].getEffectiveTime();
+                if (oldest <= from) {
+                    selected = i;
+                    break;
+                }
+                if (oldest < furthest) {
+                    furthest = oldest;
+                    selected = i;
+                }
+            }
+            AbstractStatPeriod period = periods[resolution[selected]];
+            if (cascade == null)
+                return period.query(from, to, channels, timestamp);
+            // the open frames of all finer periods are not yet part of the selected period
+            StatFrame[] pending = null;
+            for (int i = 0; i < selected; i++) {
+                StatFrame[] head = ((StatPeriod) periods[cascade[i]]).getHeadFrames(timestamp);
+                if (pending != null)
+                    for (int c = 0; c < head.length; c++)
+                        head[c] = StatFrame.merge(head[c], pending[c]);
+                pending = head;
+            }
+            return ((StatPeriod) period).query(from, to, channels, timestamp, pending);
+        }
+    }
+
+    /**
+     * must be called while holding the lock
+     */
+    private void fillRollupSummaries(StatSummary[][] summaries, long timestamp) {
+        // open frames of all finer periods, not yet folded into the current period
+        StatFrame[] pending = null;
+        // finest first: closed frames cascade upwards before the coarser periods are read
+        for (Integer p : cascade) {
+            StatPeriod period = (StatPeriod) periods[p];
+            StatFrame[] sum = period.summarize(timestamp);
+            StatFrame[] head = period.getHeadFrames(timestamp);
+            for (int i = 0; i < channelCount; i++) {
+                StatFrame frame = sum[i];
+                if (pending != null) {
+                    frame = StatFrame.merge(frame, pending[i]).withTimes(frame.getStartTime(), frame.getEndTime());
+                    head[i] = StatFrame.merge(head[i], pending[i]);
+                }
+                summaries[i][p] = new SummaryWrapper(frame, period.getTitle());
+            }
+            pending = head;
+        }
     }
 
     public String[] getPeriodTitles() {
         return periodTitles;
     }
 
+    public HistogramLayout getHistogramLayout() {
+        return layout;
+    }
+
+    public StatClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Closes the underlying store, if any. Data points added afterwards are not persisted reliably.
+     */
+    public void close() {
+        stopTicker();
+        if (store != null)
+            store.close();
+    }
+
+    /**
+     * Hands the frame rotation of all periods over to the shared {@link FrameTicker}.
+     *
+     * From then on, the periods are only rotated at the frame boundaries. Data points
+     * are added to the newest frame, regardless of their timestamp. This should only
+     * be used with a clock following the system time.
+     */
+    public void startTicker() {
+        for (AbstractStatPeriod period : periods)
+            period.setRotateOnAccess(false);
+        FrameTicker.getShared().register(this);
+    }
+
+    /**
+     * Stops the frame rotation by the ticker. The periods rotate on access again.
+     */
+    public void stopTicker() {
+        FrameTicker.getShared().unregister(this);
+        for (AbstractStatPeriod period : periods)
+            period.setRotateOnAccess(true);
+    }
+
+    /**
+     * rotates all periods. In rollup mode the finest period is rotated first.
+     */
+    void tick(long timestamp) {
+        if (cascade != null) {
+            synchronized (LOCK) {
+                for (Integer p : cascade)
+                    periods[p].tick(timestamp);
+            }
+            return;
+        }
+        for (AbstractStatPeriod period : periods)
+            period.tick(timestamp);
+    }
+
+    /**
+     * @return the time the next frame of any period ends at
+     */
+    long getNextRotation() {
+        long next = Long.MAX_VALUE;
+        for (AbstractStatPeriod period : periods)
+            next = Math.min(next, period.getNextRotation());
+        return next;
+    }
+
 }
@@ -1,142 +1,233 @@
 package ch.awae.appcheck.statistics;
 
+import java.io.IOException;
+
 /**
  * A statistics period holds data for a limited amount of
  * time int multiple frames and discards frames that are too
  * old automatically.
  *
+ * All access is synchronized on the period itself.
+ *
+ * A period can be given a rollup target. Every frame closed by this period is
+ * then folded into the newest frame of the target.
+ *
+ * Frames are rotated on access, unless disabled in favour of a {@link FrameTicker}.
+ *
  * @author Andreas Wälchli
  * @version 1.1
+ *
+ * @see FrameStore
  */
-public class StatPeriod {
+public class StatPeriod extends AbstractStatPeriod {
 
-    private final long totalTime;
-    private final long frameTime;
-    private final int frameCount;
-    private final String title;
+    private final FrameStore frames;
+    private StatPeriod rollupTarget;
 
-    private final boolean isInfinite;
+    public StatPeriod(PeriodConfig config, int channelCount, long startTime) {
+        this(config, channelCount, startTime, HistogramLayout.DEFAULT);
+    }
 
-    private StatFrame[][] frames;
-    private int channelCount;
+    public StatPeriod(PeriodConfig config, int channelCount, long startTime, HistogramLayout layout) {
+        this(config, channelCount, startTime, layout, StatClock.SYSTEM);
+    }
 
-    public StatPeriod(PeriodConfig config, int channelCount, long startTime) {
-        this.channelCount = channelCount;
-        isInfinite = config.isInfinite();
-        if (isInfinite) {
-            totalTime = Long.MAX_VALUE;
-            frameTime = Long.MAX_VALUE;
-            frameCount = 1;
-        } else {
-            totalTime = config.getPeriodTime();
-            frameTime = config.getFrameTime();
-            frameCount = config.getFrameCount();
-        }
-        frames = new StatFrame[this.channelCount][frameCount];
-        for (int i = 0; i < this.channelCount; i++) {
-            frames[i][0] = new StatFrame(startTime);
-        }
-        title = config.getTitle();
+    /**
+     * @param clock the clock used whenever no explicit timestamp is given
+     */
+    public StatPeriod(PeriodConfig config, int channelCount, long startTime, HistogramLayout layout, StatClock clock) {
+        super(config, channelCount, layout, clock);
+        frames = new FrameStore(this.channelCount, frameCount, frameTime, startTime, layout);
+    }
+
+    /**
+     * Creates a period backed by a memory-mapped file of the given store.
+     * If the file holds frames recorded earlier, the period continues from there.
+     *
+     * @param index the index of the period inside its manager
+     * @param mode the ingestion mode of the manager
+     * @throws IOException if the file cannot be opened
+     */
+    StatPeriod(PeriodConfig config, int channelCount, long startTime, HistogramLayout layout, StatClock clock,
+               MappedStatStore store, int index, IngestionMode mode) throws IOException {
+        super(config, channelCount, layout, clock);
+        FrameMapping mapping = store.open(index, mode, channelCount, frameCount, frameTime, layout);
+        frames = new FrameStore(this.channelCount, frameCount, frameTime, startTime, layout, mapping);
     }
 
+    @Override
     public synchronized void addValues(double values[], long timestamp) {
-        if (!isInfinite)
-            updateFrames(timestamp);
-        assert values.length == channelCount;
-        for (int i = 0; i < channelCount; i++) {
-            frames[i][0].addPoint(values[i]);
+        rotate(timestamp);
+        assert values.length <= channelCount;
+        for (int i = 0; i < values.length; i++) {
+            frames.add(i, values[i]);
         }
     }
 
-    public int getChannelCount() {
-        return this.channelCount;
+    @Override
+    public synchronized void addValue(int channel, double value, long timestamp) {
+        rotate(timestamp);
+        assert channel < channelCount;
+        frames.add(channel, value);
     }
 
-    public long getConfiguredTime() {
-        return this.totalTime;
+    /**
+     * {@inheritDoc}
+     *
+     * If the period is persisted and the file still holds the channel from an earlier run,
+     * the recorded frames of the channel are restored. Channels are identified by their index only.
+     *
+     * @throws IllegalStateException if the file cannot be extended
+     */
+    @Override
+    public synchronized int addChannel() {
+        frames.addChannel();
+        return channelCount++;
     }
 
-    public int getConfiguredFrameCount() {
-        return this.frameCount;
+    @Override
+    public synchronized void addValues(long timestamps[], double values[], int offset, int rows) {
+        assert values.length >= (offset + rows) * channelCount;
+        for (int r = offset; r < offset + rows; r++) {
+            rotate(timestamps[r]);
+            int base = r * channelCount;
+            for (int i = 0; i < channelCount; i++) {
+                frames.add(i, values[base + i]);
+            }
+        }
     }
 
-    public int getEffectiveFrameCount() {
-        if (!isInfinite)
-            updateFrames();
-        // find first non-null frame
-        for (int i = 0; i < frameCount; i++)
-            if (frames[0][i] == null)
-                return frameCount - i;
-        return 0;
+    @Override
+    public synchronized int getEffectiveFrameCount() {
+        rotate(clock.currentTimeMillis());
+        return frames.size();
     }
 
-    public long getEffectiveTime() {
-        long timestamp = System.currentTimeMillis();
-        if (!isInfinite)
-            updateFrames(timestamp);
-        // find oldest frame
-        for (int i = frameCount-1; i>= 0;i--)
-            if (frames[0][i] != null)
-                return frames[0][i].getStartTime();
-        throw new IllegalStateException("unable to find non-null frame!");
+    @Override
+    public synchronized long getEffectiveTime() {
+        rotate(clock.currentTimeMillis());
+        return frames.getOldestStart();
     }
 
-    public synchronized StatSummary[] getSummary() {
-        long timestamp = System.currentTimeMillis();
-        if (isInfinite) {
-            StatSummary[] res = new StatSummary[channelCount];
-            for (int i = 0; i < channelCount; i++) {
-                StatFrame frame = new StatFrame(frames[i][0]);
-                frame.setEndTime(timestamp);
-                res[i] = new SummaryWrapper(frame, title);
-            }
-            return res;
-        } else {
-            updateFrames(timestamp);
-            StatSummary[] res = new StatSummary[channelCount];
-            for (int i = 0; i < channelCount; i++) {
-                StatFrame frame = new StatFrame(frames[i][0]);
-                frame.setEndTime(timestamp);
-                merge:
-                for (int j = 1; j < frameCount; j++) {
-                    StatFrame next = frames[i][j];
-                    if (next == null)
-                        break merge;
-                    frame = StatFrame.merge(frame, next);
-                }
-                res[i] = new SummaryWrapper(frame, title);
-            }
-            return res;
+    @Override
+    public synchronized StatSummary[] getSummary(long timestamp) {
+        StatFrame[] frames = summarize(timestamp);
+        StatSummary[] res = new StatSummary[channelCount];
+        for (int i = 0; i < channelCount; i++) {
+            res[i] = new SummaryWrapper(frames[i], title);
+        }
+        return res;
+    }
+
+    /**
+     * Summarises every channel over the whole period.
+     * Costs O(buckets) and allocates a frame per channel, independent of the number of frames.
+     */
+    synchronized StatFrame[] summarize(long timestamp) {
+        rotate(timestamp);
+        StatFrame[] res = new StatFrame[channelCount];
+        for (int i = 0; i < channelCount; i++) {
+            res[i] = frames.summarize(i, timestamp);
         }
+        return res;
     }
 
-    private void updateFrames() {
-        updateFrames(System.currentTimeMillis());
+    @Override
+    public RangeSummary[] query(long from, long to, int[] channels, long timestamp) {
+        return query(from, to, channels, timestamp, null);
     }
 
-    private void updateFrames(long timestamp) {
-        assert !isInfinite;
-        // check if newest frame is too old
-        long start = frames[0][0].getStartTime();
-        long end = start + frameTime;
-        if (end > timestamp)
-            return;
-        // it's too old
+    /**
+     * Summarises the given channels over a time range
+     *
+     * @param pending additional frames (indexed by channel) to merge into the newest frame. May be {@code null}.
+     */
+    synchronized RangeSummary[] query(long from, long to, int[] channels, long timestamp, StatFrame[] pending) {
+        rotate(timestamp);
+        // the overlap does not depend on the channel
+        int overlapping = 0, partial = 0;
+        for (int age = 0; age < frames.size(); age++) {
+            long start = frames.getStart(age);
+            long end = age == 0 ? timestamp : frameEnd(start, frameTime);
+            if (end <= from)
+                break;
+            if (start >= to)
+                continue;
+            overlapping++;
+            if (start < from || end > to)
+                partial++;
+        }
+        RangeSummary[] res = new RangeSummary[channels.length];
+        for (int i = 0; i < channels.length; i++) {
+            int channel = channels[i];
+            StatFrame frame = frames.mergeRange(channel, from, to, timestamp, pending == null ? null : pending[channel]);
+            res[i] = new RangeSummary(frame, title, from, to, overlapping, partial);
+        }
+        return res;
+    }
+
+    /**
+     * Provides the newest (still open) frame of every channel
+     */
+    synchronized StatFrame[] getHeadFrames(long timestamp) {
+        rotate(timestamp);
+        StatFrame[] res = new StatFrame[channelCount];
         for (int i = 0; i < channelCount; i++) {
-            frames[i][0].setEndTime(end);
-            // roll array
-            for (int j = frameCount - 1; j > 0; j--)
-                frames[i][j] = frames[i][j - 1];
-            // calculate start time of new frame
-            long delta = (timestamp - end) % frameTime; // time passed since expected frame start
-            long nextStart = timestamp - delta;
-            // create new frame
-            frames[i][0] = new StatFrame(nextStart);
+            res[i] = frames.frame(i, 0, timestamp);
+        }
+        return res;
+    }
+
+    /**
+     * Merges already aggregated frames (one per channel) into the frame covering the given time
+     */
+    synchronized void addFrames(StatFrame[] values, long timestamp) {
+        rotateFrames(timestamp);
+        assert values.length <= channelCount;
+        for (int i = 0; i < values.length; i++) {
+            frames.merge(i, values[i]);
         }
     }
 
-    public String getTitle() {
-        return title;
+    /**
+     * Sets the period every closed frame is folded into
+     */
+    synchronized void setRollupTarget(StatPeriod target) {
+        this.rollupTarget = target;
+    }
+
+    @Override
+    synchronized void tick(long timestamp) {
+        rotateFrames(timestamp);
+    }
+
+    @Override
+    synchronized long getNextRotation() {
+        return isInfinite ? Long.MAX_VALUE : frameEnd(frames.getHeadStart(), frameTime);
+    }
+
+    private void rotate(long timestamp) {
+        if (rotateOnAccess)
+            rotateFrames(timestamp);
+    }
+
+    private void rotateFrames(long timestamp) {
+        if (isInfinite)
+            return;
+        if (rollupTarget == null) {
+            frames.rotate(timestamp);
+            return;
+        }
+        if (!frames.isExpired(timestamp))
+            return;
+        // capture the closing frame before the slot is reused
+        long closedStart = frames.getHeadStart();
+        StatFrame[] closed = new StatFrame[channelCount];
+        for (int i = 0; i < channelCount; i++) {
+            closed[i] = frames.frame(i, 0, frameEnd(closedStart, frameTime));
+        }
+        frames.rotate(timestamp);
+        rollupTarget.addFrames(closed, closedStart);
     }
 
 }
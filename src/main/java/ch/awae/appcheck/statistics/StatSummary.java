@@ -24,4 +24,19 @@ public interface StatSummary {
 
     long getDuration();
 
+    /**
+     * Estimates a percentile of the summarised values
+     *
+     * @param percentile the percentile in the range [0;1] (e.g. 0.99 for p99)
+     */
+    double getPercentile(double percentile);
+
+    double getP50();
+
+    double getP90();
+
+    double getP99();
+
+    double getP999();
+
 }
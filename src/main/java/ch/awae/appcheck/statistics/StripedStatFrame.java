@@ -0,0 +1,194 @@
+package ch.awae.appcheck.statistics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A lock-free frame for multiple channels.
+ *
+ * Writers are spread over a number of stripes based on their thread id. Every channel
+ * holds count, sum, min and max for every stripe, padded to a full cache line. Updates
+ * are done using CAS operations on the stripe cells, so writers on different stripes
+ * never contend. The stripes are only merged when the frame is read.
+ *
+ * The histogram buckets are not striped. Values spread over many buckets anyway,
+ * and striping them would multiply the memory footprint by the stripe count.
+ *
+ * Channels are created lazily by the first write to them. The channel array is
+ * replaced atomically when it grows, the cells of existing channels are kept,
+ * so no concurrent write is lost.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ */
+final class StripedStatFrame {
+
+    // cell offsets inside a stripe
+    private static final int COUNT = 0, SUM = 1, MIN = 2, MAX = 3;
+    // 8 longs = 64 bytes, the usual cache line size
+    private static final int STRIPE_SIZE = 8;
+
+    private static final long INITIAL_MIN = Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+    private static final long INITIAL_MAX = Double.doubleToRawLongBits(Double.NEGATIVE_INFINITY);
+
+    private final long startTime;
+    private volatile long endTime = 0;
+    private final int stripeMask;
+    private final HistogramLayout layout;
+    private final AtomicReference<Channel[]> channels;
+
+    /**
+     * cells and histogram of a single channel
+     */
+    private static final class Channel {
+
+        private final AtomicLongArray cells;
+        private final AtomicLongArray histogram;
+
+        Channel(int stripes, int buckets) {
+            // one line of padding in front of the first stripe
+            cells = new AtomicLongArray((stripes + 1) * STRIPE_SIZE);
+            histogram = new AtomicLongArray(buckets);
+            for (int s = 1; s <= stripes; s++) {
+                cells.set(s * STRIPE_SIZE + MIN, INITIAL_MIN);
+                cells.set(s * STRIPE_SIZE + MAX, INITIAL_MAX);
+            }
+        }
+    }
+
+    /**
+     * Creates a new frame
+     *
+     * @param startTime the system time the frame starts at
+     * @param channelCount the number of channels to create upfront
+     * @param layout the layout of the histograms
+     * @param stripes the number of stripes. Must be a power of 2.
+     */
+    StripedStatFrame(long startTime, int channelCount, HistogramLayout layout, int stripes) {
+        if (Integer.bitCount(stripes) != 1)
+            throw new IllegalArgumentException("stripe count must be a power of 2: " + stripes);
+        this.startTime = startTime;
+        this.stripeMask = stripes - 1;
+        this.layout = layout;
+        Channel[] initial = new Channel[channelCount];
+        for (int c = 0; c < channelCount; c++)
+            initial[c] = new Channel(stripes, layout.getBucketCount());
+        this.channels = new AtomicReference<>(initial);
+    }
+
+    /**
+     * Adds a value to every channel of the stripe owned by the current thread
+     *
+     * @param values the array holding the values
+     * @param offset the index of the value of the first channel
+     * @param count the number of channels to add a value to
+     */
+    void addPoint(double[] values, int offset, int count) {
+        int stripe = stripeIndex(Thread.currentThread().getId());
+        for (int c = 0; c < count; c++)
+            add(channel(c), stripe, values[offset + c]);
+    }
+
+    /**
+     * Adds a value to a single channel in the stripe owned by the current thread
+     */
+    void addValue(int channel, double value) {
+        add(channel(channel), stripeIndex(Thread.currentThread().getId()), value);
+    }
+
+    private void add(Channel channel, int stripe, double value) {
+        AtomicLongArray cells = channel.cells;
+        int cell = (stripe + 1) * STRIPE_SIZE;
+        // sum
+        long current;
+        do {
+            current = cells.get(cell + SUM);
+        } while (!cells.compareAndSet(cell + SUM, current,
+                Double.doubleToRawLongBits(Double.longBitsToDouble(current) + value)));
+        // min
+        long bits = Double.doubleToRawLongBits(value);
+        while (value < Double.longBitsToDouble(current = cells.get(cell + MIN))) {
+            if (cells.compareAndSet(cell + MIN, current, bits))
+                break;
+        }
+        // max
+        while (value > Double.longBitsToDouble(current = cells.get(cell + MAX))) {
+            if (cells.compareAndSet(cell + MAX, current, bits))
+                break;
+        }
+        channel.histogram.incrementAndGet(layout.bucketOf(value));
+        // count last, so readers rarely see a count without its value
+        cells.incrementAndGet(cell + COUNT);
+    }
+
+    /**
+     * @return the channel with the given index, creating it (and all channels below) if necessary
+     */
+    private Channel channel(int index) {
+        while (true) {
+            Channel[] current = channels.get();
+            if (index < current.length)
+                return current[index];
+            Channel[] next = new Channel[index + 1];
+            System.arraycopy(current, 0, next, 0, current.length);
+            for (int c = current.length; c <= index; c++)
+                next[c] = new Channel(stripeMask + 1, layout.getBucketCount());
+            if (channels.compareAndSet(current, next))
+                return next[index];
+        }
+    }
+
+    /**
+     * Merges all stripes of a channel into a single frame.
+     *
+     * Reading never blocks writers. A concurrent write may be visible partially.
+     */
+    StatFrame toFrame(int channel) {
+        Channel[] current = channels.get();
+        int buckets = layout.getBucketCount();
+        long[] hist = new long[buckets];
+        if (channel >= current.length)
+            return new StatFrame(startTime, endTime, 0, 0, 0, 0, layout, hist);
+        AtomicLongArray cells = current[channel].cells;
+        long count = 0;
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int s = 0; s <= stripeMask; s++) {
+            int cell = (s + 1) * STRIPE_SIZE;
+            long n = cells.get(cell + COUNT);
+            if (n == 0)
+                continue;
+            count += n;
+            sum += Double.longBitsToDouble(cells.get(cell + SUM));
+            min = Math.min(min, Double.longBitsToDouble(cells.get(cell + MIN)));
+            max = Math.max(max, Double.longBitsToDouble(cells.get(cell + MAX)));
+        }
+        AtomicLongArray histogram = current[channel].histogram;
+        for (int b = 0; b < buckets; b++)
+            hist[b] = histogram.get(b);
+        if (count == 0)
+            return new StatFrame(startTime, endTime, 0, 0, 0, 0, layout, hist);
+        return new StatFrame(startTime, endTime, count, min, sum / count, max, layout, hist);
+    }
+
+    /**
+     * spreads thread ids over the stripes
+     */
+    private int stripeIndex(long threadId) {
+        int h = (int) (threadId ^ (threadId >>> 32));
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h & stripeMask;
+    }
+
+    void setEndTime(long endTime) {
+        this.endTime = endTime;
+    }
+
+    long getStartTime() {
+        return startTime;
+    }
+
+}
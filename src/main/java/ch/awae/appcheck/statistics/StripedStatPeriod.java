@@ -0,0 +1,241 @@
+package ch.awae.appcheck.statistics;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free statistics period.
+ *
+ * The frames are held in an immutable array (newest frame first) that is replaced
+ * atomically whenever the frames are rotated. Writers only accumulate into the
+ * stripes of the newest frame, readers merge the stripes of all frames. Neither
+ * writers nor readers ever take a lock.
+ *
+ * A writer that is delayed over a frame rotation still writes into the frame it
+ * started with. As long as that frame is still part of the period, the value is
+ * counted. If the rotations during the delay drop the frame from the period (i.e.
+ * the period advances by {@code frameCount} frames or more, e.g. after a long idle
+ * time), the value is lost.
+ *
+ * If rotation on access is disabled, writers do not even check the frame time.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ *
+ * @see StripedStatFrame
+ */
+public class StripedStatPeriod extends AbstractStatPeriod {
+
+    private final int stripes;
+    private final AtomicReference<StripedStatFrame[]> frames;
+
+    public StripedStatPeriod(PeriodConfig config, int channelCount, long startTime) {
+        this(config, channelCount, startTime, HistogramLayout.DEFAULT, defaultStripeCount());
+    }
+
+    /**
+     * @param stripes the number of stripes per frame. Must be a power of 2.
+     */
+    public StripedStatPeriod(PeriodConfig config, int channelCount, long startTime, HistogramLayout layout, int stripes) {
+        this(config, channelCount, startTime, layout, stripes, StatClock.SYSTEM);
+    }
+
+    /**
+     * @param stripes the number of stripes per frame. Must be a power of 2.
+     * @param clock the clock used whenever no explicit timestamp is given
+     */
+    public StripedStatPeriod(PeriodConfig config, int channelCount, long startTime, HistogramLayout layout, int stripes,
+                             StatClock clock) {
+        super(config, channelCount, layout, clock);
+        this.stripes = stripes;
+        StripedStatFrame[] initial = new StripedStatFrame[frameCount];
+        initial[0] = new StripedStatFrame(startTime, channelCount, layout, stripes);
+        this.frames = new AtomicReference<>(initial);
+    }
+
+    public StripedStatPeriod(PeriodConfig config, int channelCount, long startTime, HistogramLayout layout) {
+        this(config, channelCount, startTime, layout, defaultStripeCount());
+    }
+
+    public StripedStatPeriod(PeriodConfig config, int channelCount, long startTime, HistogramLayout layout,
+                             StatClock clock) {
+        this(config, channelCount, startTime, layout, defaultStripeCount(), clock);
+    }
+
+    /**
+     * the smallest power of 2 that is at least twice the number of processors
+     */
+    private static int defaultStripeCount() {
+        int target = Runtime.getRuntime().availableProcessors() * 2;
+        return Integer.highestOneBit(target - 1) << 1;
+    }
+
+    @Override
+    public void addValues(double values[], long timestamp) {
+        assert values.length <= channelCount;
+        StripedStatFrame[] current = current(timestamp);
+        current[0].addPoint(values, 0, values.length);
+    }
+
+    @Override
+    public void addValues(long timestamps[], double values[], int offset, int rows) {
+        int width = channelCount;
+        assert values.length >= (offset + rows) * width;
+        StripedStatFrame[] current = frames.get();
+        for (int r = offset; r < offset + rows; r++) {
+            // only check for rotation once the current frame has ended
+            if (rotateOnAccess && !isInfinite && timestamps[r] >= frameEnd(current[0].getStartTime(), frameTime))
+                current = updateFrames(timestamps[r]);
+            current[0].addPoint(values, r * width, width);
+        }
+    }
+
+    @Override
+    public void addValue(int channel, double value, long timestamp) {
+        assert channel < channelCount;
+        StripedStatFrame[] current = current(timestamp);
+        current[0].addValue(channel, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The frames only create the cells of the new channel on the first write to it.
+     */
+    @Override
+    public synchronized int addChannel() {
+        return channelCount++;
+    }
+
+    @Override
+    public int getEffectiveFrameCount() {
+        StripedStatFrame[] current = current(clock.currentTimeMillis());
+        // find oldest non-null frame
+        for (int i = frameCount - 1; i >= 0; i--)
+            if (current[i] != null)
+                return i + 1;
+        return 0;
+    }
+
+    @Override
+    public long getEffectiveTime() {
+        StripedStatFrame[] current = current(clock.currentTimeMillis());
+        // find oldest frame
+        for (int i = frameCount - 1; i >= 0; i--)
+            if (current[i] != null)
+                return current[i].getStartTime();
+        throw new IllegalStateException("unable to find non-null frame!");
+    }
+
+    @Override
+    public StatSummary[] getSummary(long timestamp) {
+        StripedStatFrame[] current = current(timestamp);
+        StatSummary[] res = new StatSummary[channelCount];
+        for (int i = 0; i < res.length; i++) {
+            StatFrame frame = current[0].toFrame(i);
+            frame.setEndTime(timestamp);
+            for (int j = 1; j < frameCount; j++) {
+                StripedStatFrame next = current[j];
+                if (next != null)
+                    frame = StatFrame.merge(frame, next.toFrame(i));
+            }
+            res[i] = new SummaryWrapper(frame, title);
+        }
+        return res;
+    }
+
+    @Override
+    public RangeSummary[] query(long from, long to, int[] channels, long timestamp) {
+        StripedStatFrame[] current = current(timestamp);
+        // find the overlapping frames, newest first
+        int newest = -1, oldest = -1, partial = 0;
+        for (int j = 0; j < frameCount; j++) {
+            if (current[j] == null)
+                continue;
+            long start = current[j].getStartTime();
+            long end = j == 0 ? timestamp : frameEnd(start, frameTime);
+            if (end <= from)
+                break;
+            if (start >= to)
+                continue;
+            if (newest < 0)
+                newest = j;
+            oldest = j;
+            if (start < from || end > to)
+                partial++;
+        }
+        RangeSummary[] res = new RangeSummary[channels.length];
+        for (int i = 0; i < channels.length; i++) {
+            StatFrame frame = new StatFrame(from, from, 0, 0, 0, 0, layout, new long[layout.getBucketCount()]);
+            int overlapping = 0;
+            for (int j = Math.max(newest, 0); newest >= 0 && j <= oldest; j++) {
+                if (current[j] == null)
+                    continue;
+                StatFrame next = current[j].toFrame(channels[i]);
+                long start = current[j].getStartTime();
+                next.setEndTime(j == 0 ? timestamp : frameEnd(start, frameTime));
+                frame = overlapping == 0 ? next : merge(frame, next);
+                overlapping++;
+            }
+            res[i] = new RangeSummary(frame, title, from, to, overlapping, partial);
+        }
+        return res;
+    }
+
+    /**
+     * merges two frames, keeping the full time span even if one of them is empty
+     */
+    private static StatFrame merge(StatFrame a, StatFrame b) {
+        long start = Math.min(a.getStartTime(), b.getStartTime());
+        long end = Math.max(a.getEndTime(), b.getEndTime());
+        return StatFrame.merge(a, b).withTimes(start, end);
+    }
+
+    @Override
+    void tick(long timestamp) {
+        if (!isInfinite)
+            updateFrames(timestamp);
+    }
+
+    @Override
+    long getNextRotation() {
+        return isInfinite ? Long.MAX_VALUE : frameEnd(frames.get()[0].getStartTime(), frameTime);
+    }
+
+    /**
+     * @return the current frames, rotated first if rotation on access is enabled
+     */
+    private StripedStatFrame[] current(long timestamp) {
+        return isInfinite || !rotateOnAccess ? frames.get() : updateFrames(timestamp);
+    }
+
+    /**
+     * Rotates the frames if the newest frame has expired.
+     *
+     * If multiple frame times have passed, the skipped frames are left empty.
+     * Concurrent rotations are resolved by CAS, the loser simply uses the winner's frames.
+     *
+     * @return the current frames
+     */
+    private StripedStatFrame[] updateFrames(long timestamp) {
+        assert !isInfinite;
+        while (true) {
+            StripedStatFrame[] current = frames.get();
+            long end = frameEnd(current[0].getStartTime(), frameTime);
+            if (end > timestamp)
+                return current;
+            // it's too old. the newest frame may have started late, the following frames are aligned
+            long aligned = end - frameTime;
+            long expired = (timestamp - aligned) / frameTime;
+            long nextStart = aligned + expired * frameTime;
+            StripedStatFrame[] next = new StripedStatFrame[frameCount];
+            next[0] = new StripedStatFrame(nextStart, channelCount, layout, stripes);
+            for (int j = 0; j + expired < frameCount; j++)
+                next[(int) (j + expired)] = current[j];
+            if (frames.compareAndSet(current, next)) {
+                current[0].setEndTime(end);
+                return next;
+            }
+        }
+    }
+
+}
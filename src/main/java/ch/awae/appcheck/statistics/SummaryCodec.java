@@ -0,0 +1,153 @@
+package ch.awae.appcheck.statistics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Compact, versioned binary encoding of the summaries of a {@link StatManager}.
+ *
+ * The encoding carries the summary of every channel over every period, including
+ * the histogram. Summaries of the same geometry can therefore be merged with the
+ * same semantics as {@link StatFrame#merge(StatFrame, StatFrame)}.
+ *
+ * Format version 2 (varint = unsigned LEB128, doubles as IEEE 754 big-endian):
+ * <pre>
+ *  int     magic "ACSF"
+ *  byte    version
+ *  varint  channel count
+ *  varint  period count
+ *  varint  histogram octaves
+ *  varint  histogram sub-buckets
+ *  per period:
+ *    varint  title length, UTF-8 title bytes
+ *    per channel:
+ *      varint  start time
+ *      varint  duration
+ *      varint  count
+ *      if count &gt; 0:
+ *        double  sum, min, max
+ *        varint  number of non-empty histogram buckets
+ *        per non-empty bucket: varint bucket index delta, varint bucket count
+ * </pre>
+ *
+ * A histogram has {@code 2 + octaves * subBuckets} buckets: bucket 0 for values below 1,
+ * the octaves, and a dedicated overflow bucket for values above the highest octave.
+ * Version 1 had {@code 1 + octaves * subBuckets} buckets without an overflow bucket,
+ * the same bucket index therefore means a different range. Encodings of another version
+ * are rejected.
+ *
+ * @author Andreas Wälchli
+ * @version 1.1
+ *
+ * @see ClusterAggregator
+ */
+public final class SummaryCodec {
+
+    static final int MAGIC = 0x41435346; // "ACSF"
+    static final byte VERSION = 2;
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private SummaryCodec() {
+    }
+
+    /**
+     * Encodes the current summaries of a manager
+     *
+     * @return the encoded summaries
+     */
+    public static byte[] encode(StatManager manager) {
+        StatSummary[][] summaries = manager.getAllSummaries();
+        String[] titles = manager.getPeriodTitles();
+        HistogramLayout layout = manager.getHistogramLayout();
+        int channelCount = summaries.length;
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            writeVarLong(out, channelCount);
+            writeVarLong(out, titles.length);
+            writeVarLong(out, layout.getOctaves());
+            writeVarLong(out, layout.getSubBuckets());
+            for (int p = 0; p < titles.length; p++) {
+                byte[] title = titles[p].getBytes(UTF_8);
+                writeVarLong(out, title.length);
+                out.write(title);
+                for (int c = 0; c < channelCount; c++) {
+                    StatFrame frame = ((SummaryWrapper) summaries[c][p]).getFrame();
+                    writeFrame(out, frame);
+                }
+            }
+        } catch (IOException e) {
+            // cannot happen on a byte array
+            throw new IllegalStateException(e);
+        }
+        return bos.toByteArray();
+    }
+
+    private static void writeFrame(DataOutputStream out, StatFrame frame) throws IOException {
+        writeVarLong(out, frame.getStartTime());
+        writeVarLong(out, Math.max(0, frame.getEndTime() - frame.getStartTime()));
+        long count = frame.getCount();
+        writeVarLong(out, count);
+        if (count == 0)
+            return;
+        out.writeDouble(frame.getAvg() * count);
+        out.writeDouble(frame.getMin());
+        out.writeDouble(frame.getMax());
+        long[] histogram = frame.getHistogram();
+        int used = 0;
+        for (long bucket : histogram)
+            if (bucket != 0)
+                used++;
+        writeVarLong(out, used);
+        int previous = 0;
+        for (int b = 0; b < histogram.length; b++) {
+            if (histogram[b] == 0)
+                continue;
+            writeVarLong(out, b - previous);
+            writeVarLong(out, histogram[b]);
+            previous = b;
+        }
+    }
+
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        if (value < 0)
+            throw new IllegalArgumentException("negative value cannot be encoded: " + value);
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the encoding is malformed
+     */
+    static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        try {
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = in.get();
+                value |= ((long) (b & 0x7F)) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("truncated summary encoding", e);
+        }
+        throw new IllegalArgumentException("malformed varint in summary encoding");
+    }
+
+    static int readVarInt(ByteBuffer in) {
+        long value = readVarLong(in);
+        if (value > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("value out of range in summary encoding: " + value);
+        return (int) value;
+    }
+
+}
@@ -16,6 +16,10 @@ public class SummaryWrapper implements StatSummary {
         this.title = title;
     }
 
+    StatFrame getFrame() {
+        return frame;
+    }
+
     @Override
     public double getAvg() {
         return frame.getAvg();
@@ -55,4 +59,29 @@ public class SummaryWrapper implements StatSummary {
     public long getDuration() {
         return getEndTime() - getStartTime();
     }
+
+    @Override
+    public double getPercentile(double percentile) {
+        return frame.getPercentile(percentile);
+    }
+
+    @Override
+    public double getP50() {
+        return getPercentile(0.5);
+    }
+
+    @Override
+    public double getP90() {
+        return getPercentile(0.9);
+    }
+
+    @Override
+    public double getP99() {
+        return getPercentile(0.99);
+    }
+
+    @Override
+    public double getP999() {
+        return getPercentile(0.999);
+    }
 }